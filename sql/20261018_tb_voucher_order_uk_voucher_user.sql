@@ -0,0 +1,43 @@
+/*
+ 已有数据库的升级脚本：tb_voucher_order 增加 (voucher_id, user_id) 唯一索引 uk_voucher_user。
+ 订单幂等写入(INSERT IGNORE)依赖该索引，缺少时重复订单会被静默写入。
+ 新建的数据库直接执行 hmdp.sql 即可，无需执行本脚本；本脚本可以重复执行。
+
+ 1. 重复订单(同一用户同一优惠券)保留id最小的一条，其余先备份到 tb_voucher_order_dup 再删除
+ 2. 删除旧版本的索引 uk_user_voucher
+ 3. 创建 uk_voucher_user
+*/
+
+SET NAMES utf8mb4;
+
+-- 1. 备份并删除重复订单
+CREATE TABLE IF NOT EXISTS `tb_voucher_order_dup` LIKE `tb_voucher_order`;
+
+INSERT IGNORE INTO `tb_voucher_order_dup`
+SELECT o1.* FROM `tb_voucher_order` o1
+JOIN `tb_voucher_order` o2
+  ON o1.`voucher_id` = o2.`voucher_id` AND o1.`user_id` = o2.`user_id` AND o1.`id` > o2.`id`;
+
+DELETE o1 FROM `tb_voucher_order` o1
+JOIN `tb_voucher_order` o2
+  ON o1.`voucher_id` = o2.`voucher_id` AND o1.`user_id` = o2.`user_id` AND o1.`id` > o2.`id`;
+
+-- 2. 删除旧索引，MySQL不支持 DROP INDEX IF EXISTS，通过 information_schema 判断
+SET @sql = (SELECT IF(COUNT(*) > 0,
+    'ALTER TABLE `tb_voucher_order` DROP INDEX `uk_user_voucher`',
+    'SELECT 1')
+  FROM information_schema.STATISTICS
+  WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'tb_voucher_order' AND INDEX_NAME = 'uk_user_voucher');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
+
+-- 3. 创建唯一索引
+SET @sql = (SELECT IF(COUNT(*) = 0,
+    'ALTER TABLE `tb_voucher_order` ADD UNIQUE INDEX `uk_voucher_user`(`voucher_id`, `user_id`) USING BTREE',
+    'SELECT 1')
+  FROM information_schema.STATISTICS
+  WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'tb_voucher_order' AND INDEX_NAME = 'uk_voucher_user');
+PREPARE stmt FROM @sql;
+EXECUTE stmt;
+DEALLOCATE PREPARE stmt;
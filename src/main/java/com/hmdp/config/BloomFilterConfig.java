@@ -0,0 +1,49 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.RedisBloomFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+import static com.hmdp.utils.RedisConstants.BLOOM_BLOG_KEY;
+import static com.hmdp.utils.RedisConstants.BLOOM_SHOP_KEY;
+
+/**
+ * 防缓存穿透的布隆过滤器
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Configuration
+public class BloomFilterConfig {
+
+    @Bean
+    public RedisBloomFilter shopBloomFilter(StringRedisTemplate redisTemplate,
+                                            RedisMessageListenerContainer listenerContainer,
+                                            CacheProperties cacheProperties) {
+        CacheProperties.Bloom bloom = cacheProperties.getBloom();
+        return createFilter(redisTemplate, listenerContainer, BLOOM_SHOP_KEY,
+                bloom.getShopExpectedInsertions(), bloom);
+    }
+
+    @Bean
+    public RedisBloomFilter blogBloomFilter(StringRedisTemplate redisTemplate,
+                                            RedisMessageListenerContainer listenerContainer,
+                                            CacheProperties cacheProperties) {
+        CacheProperties.Bloom bloom = cacheProperties.getBloom();
+        return createFilter(redisTemplate, listenerContainer, BLOOM_BLOG_KEY,
+                bloom.getBlogExpectedInsertions(), bloom);
+    }
+
+    private RedisBloomFilter createFilter(StringRedisTemplate redisTemplate,
+                                          RedisMessageListenerContainer listenerContainer,
+                                          String key, long expectedInsertions, CacheProperties.Bloom bloom) {
+        RedisBloomFilter filter = new RedisBloomFilter(
+                redisTemplate, key, expectedInsertions, bloom.getFpp(), bloom.isEnabled());
+        // 订阅其他节点新增的元素
+        listenerContainer.addMessageListener(filter, new ChannelTopic(filter.getChannel()));
+        return filter;
+    }
+}
@@ -0,0 +1,90 @@
+package com.hmdp.config;
+
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.Shop;
+import com.hmdp.service.IBlogService;
+import com.hmdp.service.IShopService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.RedisBloomFilter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.Function;
+
+import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
+
+/**
+ * 启动时用 tb_shop、tb_blog 的id预热布隆过滤器
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BloomFilterInitializer implements ApplicationRunner {
+
+    private static final int PAGE_SIZE = 1000;
+
+    private final IShopService shopService;
+
+    private final IBlogService blogService;
+
+    private final RedisBloomFilter shopBloomFilter;
+
+    private final RedisBloomFilter blogBloomFilter;
+
+    private final CacheClient cacheClient;
+
+    private final CacheProperties cacheProperties;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!cacheProperties.getBloom().isEnabled()) {
+            return;
+        }
+        // 1. 商铺
+        seed(shopBloomFilter, lastId -> shopService.lambdaQuery()
+                .select(Shop::getId)
+                .gt(Shop::getId, lastId)
+                .orderByAsc(Shop::getId)
+                .last("LIMIT " + PAGE_SIZE)
+                .list()
+                .stream().map(Shop::getId).toList());
+        cacheClient.registerBloomFilter(CACHE_SHOP_KEY, shopBloomFilter);
+        // 2. 博客
+        seed(blogBloomFilter, lastId -> blogService.lambdaQuery()
+                .select(Blog::getId)
+                .gt(Blog::getId, lastId)
+                .orderByAsc(Blog::getId)
+                .last("LIMIT " + PAGE_SIZE)
+                .list()
+                .stream().map(Blog::getId).toList());
+    }
+
+    /**
+     * 先合并redis中已有的位图，再按id游标分页把数据库中的id写入
+     */
+    private void seed(RedisBloomFilter filter, Function<Long, List<Long>> pageLoader) {
+        long start = System.currentTimeMillis();
+        filter.loadFromRedis();
+        long lastId = 0;
+        long total = 0;
+        while (true) {
+            List<Long> ids = pageLoader.apply(lastId);
+            if (ids.isEmpty()) {
+                break;
+            }
+            filter.addAll(ids);
+            total += ids.size();
+            lastId = ids.get(ids.size() - 1);
+        }
+        filter.markReady();
+        log.info("布隆过滤器 {} 预热完成，共 {} 个id，耗时 {} ms",
+                filter.getKey(), total, System.currentTimeMillis() - start);
+    }
+}
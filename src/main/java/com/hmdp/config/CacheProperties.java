@@ -0,0 +1,226 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.CacheStrategy;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 缓存相关配置，对应 application.yaml 中的 hmdp.cache
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.cache")
+public class CacheProperties {
+
+    /**
+     * 本地一级缓存
+     */
+    private Local local = new Local();
+
+    /**
+     * 缓存未命中时的请求合并
+     */
+    private SingleFlight singleFlight = new SingleFlight();
+
+    /**
+     * 防缓存穿透的布隆过滤器
+     */
+    private Bloom bloom = new Bloom();
+
+    /**
+     * 缓存值的序列化方式
+     */
+    private Codec codec = new Codec();
+
+    /**
+     * key前缀 -> 查询策略，未配置的前缀使用逻辑过期
+     */
+    private Map<String, CacheStrategy> strategies = new LinkedHashMap<>();
+
+    /**
+     * 提前刷新策略的参数
+     */
+    private EarlyRefresh earlyRefresh = new EarlyRefresh();
+
+    /**
+     * 逻辑过期缓存的异步重建
+     */
+    private Rebuild rebuild = new Rebuild();
+
+    /**
+     * 启动时的缓存预热
+     */
+    private WarmUp warmUp = new WarmUp();
+
+    /**
+     * 热点key探测
+     */
+    private HotKey hotKey = new HotKey();
+
+    @Data
+    public static class Local {
+        /**
+         * 是否开启本地缓存
+         */
+        private boolean enabled = true;
+        /**
+         * 最大条目数
+         */
+        private long maximumSize = 10000;
+        /**
+         * 最大权重(缓存值的字节数之和)，大于0时按权重淘汰
+         */
+        private long maximumWeight = 0;
+        /**
+         * 兜底过期时间，失效广播丢失时本地缓存最多旧这么久
+         */
+        private long expireSeconds = 60;
+    }
+
+    @Data
+    public static class SingleFlight {
+        /**
+         * 是否开启本节点内的请求合并
+         */
+        private boolean enabled = true;
+        /**
+         * 等待加载结果的最长时间，超时后自行查询数据库
+         */
+        private long timeoutMillis = 3000;
+        /**
+         * 是否开启跨节点合并，开启后只有拿到 lock:load:{key} 的节点查询数据库
+         */
+        private boolean distributed = false;
+        /**
+         * 跨节点合并时轮询redis的间隔
+         */
+        private long pollMillis = 50;
+    }
+
+    @Data
+    public static class Bloom {
+        /**
+         * 是否开启布隆过滤器
+         */
+        private boolean enabled = true;
+        /**
+         * 商铺id的预计数量
+         */
+        private long shopExpectedInsertions = 1000000;
+        /**
+         * 博客id的预计数量
+         */
+        private long blogExpectedInsertions = 1000000;
+        /**
+         * 期望误判率
+         */
+        private double fpp = 0.01;
+    }
+
+    @Data
+    public static class Codec {
+        /**
+         * 序列化方式，json 或 binary
+         */
+        private String type = "json";
+        /**
+         * binary 序列化时，数据超过该字节数使用lz4压缩
+         */
+        private int compressThreshold = 1024;
+    }
+
+    @Data
+    public static class EarlyRefresh {
+        /**
+         * 提前程度，越大越早刷新，1为XFetch推荐值
+         */
+        private double beta = 1.0;
+        /**
+         * 缓存中没有记录重建耗时时使用的默认值，毫秒
+         */
+        private long defaultRebuildMillis = 100;
+    }
+
+    @Data
+    public static class Rebuild {
+        /**
+         * 重建线程数
+         */
+        private int parallelism = 10;
+        /**
+         * 排队任务上限，超过后丢弃新任务
+         */
+        private int queueCapacity = 1000;
+        /**
+         * 应用关闭时等待任务完成的最长时间
+         */
+        private long shutdownTimeoutSeconds = 10;
+    }
+
+    @Data
+    public static class WarmUp {
+        /**
+         * 是否在启动时预热缓存
+         */
+        private boolean enabled = true;
+        /**
+         * 每次从数据库读取的行数
+         */
+        private int pageSize = 500;
+        /**
+         * 并行写redis的线程数
+         */
+        private int workers = 4;
+        /**
+         * 预热完成比例达到该值后才接收流量，0表示不等待
+         */
+        private double readyFraction = 1.0;
+        /**
+         * 打印预热进度的间隔
+         */
+        private long progressIntervalSeconds = 5;
+    }
+
+    @Data
+    public static class HotKey {
+        /**
+         * 是否开启热点key探测
+         */
+        private boolean enabled = true;
+        /**
+         * 统计窗口长度
+         */
+        private long windowSeconds = 10;
+        /**
+         * 窗口切分的桶数，越多滑动越平滑
+         */
+        private int buckets = 5;
+        /**
+         * 窗口内访问次数达到该值即为热点
+         */
+        private long threshold = 500;
+        /**
+         * count-min sketch 每行的计数器个数
+         */
+        private int sketchWidth = 4096;
+        /**
+         * count-min sketch 的行数
+         */
+        private int sketchDepth = 4;
+        /**
+         * 热点key本地副本的过期时间
+         */
+        private long replicaTtlMillis = 1000;
+        /**
+         * 最多同时保存的热点key数量
+         */
+        private int maxHotKeys = 100;
+    }
+}
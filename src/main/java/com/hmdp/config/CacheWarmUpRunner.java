@@ -0,0 +1,269 @@
+package com.hmdp.config;
+
+import cn.hutool.json.JSONUtil;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Shop;
+import com.hmdp.entity.ShopType;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IShopService;
+import com.hmdp.service.IShopTypeService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.SegmentedStock;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 启动时在后台预热 cache:shop、shop:geo、seckill:stock、shop:type:list。
+ * 按id游标分页读取数据库，每页交给写线程通过pipeline写入redis；
+ * 预热比例达到 hmdp.cache.warm-up.ready-fraction 之前，应用的就绪状态为拒绝流量。
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class CacheWarmUpRunner implements ApplicationRunner {
+
+    private final IShopService shopService;
+
+    private final IShopTypeService shopTypeService;
+
+    private final ISeckillVoucherService seckillVoucherService;
+
+    private final CacheClient cacheClient;
+
+    private final SegmentedStock segmentedStock;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final CacheProperties cacheProperties;
+
+    private final ApplicationEventPublisher eventPublisher;
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong warmed = new AtomicLong();
+
+    private volatile boolean ready;
+
+    private volatile boolean finished;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        CacheProperties.WarmUp config = cacheProperties.getWarmUp();
+        if (!config.isEnabled() || config.getReadyFraction() <= 0) {
+            ready = true;
+        }
+        if (!config.isEnabled()) {
+            finished = true;
+            return;
+        }
+        Thread thread = new Thread(this::warmUp, "cache-warm-up");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 启动完成时spring会发布接收流量事件，预热未达标则改回拒绝流量
+     */
+    @EventListener
+    public synchronized void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+        if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC && !ready) {
+            log.info("缓存预热未完成，暂不接收流量");
+            AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+        }
+    }
+
+    private void warmUp() {
+        CacheProperties.WarmUp config = cacheProperties.getWarmUp();
+        long start = System.currentTimeMillis();
+        LocalDateTime now = LocalDateTime.now();
+        // 1. 先统计总数，用于计算进度
+        total.set(shopService.count()
+                + shopTypeService.count()
+                + seckillVoucherService.lambdaQuery().gt(SeckillVoucher::getEndTime, now).count());
+        // 2. 写redis的线程池，队列满时由读取线程自己写，避免读得太快占满内存
+        AtomicInteger threadIndex = new AtomicInteger();
+        ThreadPoolExecutor workers = new ThreadPoolExecutor(
+                config.getWorkers(), config.getWorkers(), 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getWorkers() * 2),
+                r -> new Thread(r, "cache-warm-up-" + threadIndex.incrementAndGet()),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        try {
+            // 3. 商铺类型，数据量很小，一次写入
+            warmShopTypes();
+            // 4. 商铺缓存和地理位置
+            page(workers, lastId -> shopService.lambdaQuery()
+                            .gt(Shop::getId, lastId)
+                            .orderByAsc(Shop::getId)
+                            .last("LIMIT " + config.getPageSize())
+                            .list(),
+                    Shop::getId, this::warmShops);
+            // 5. 未结束的秒杀券库存
+            page(workers, lastId -> seckillVoucherService.lambdaQuery()
+                            .gt(SeckillVoucher::getVoucherId, lastId)
+                            .gt(SeckillVoucher::getEndTime, now)
+                            .orderByAsc(SeckillVoucher::getVoucherId)
+                            .last("LIMIT " + config.getPageSize())
+                            .list(),
+                    SeckillVoucher::getVoucherId, this::warmSeckillStock);
+            workers.shutdown();
+            workers.awaitTermination(10, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("缓存预热失败，已预热 {}/{}", warmed.get(), total.get(), e);
+        } finally {
+            workers.shutdownNow();
+            finished = true;
+            // 出错或数据被删除导致达不到比例时，也不能一直拒绝流量
+            markReady();
+        }
+        long cost = Math.max(1, System.currentTimeMillis() - start);
+        log.info("缓存预热结束，共 {}/{} 条，耗时 {} ms，{} 条/秒",
+                warmed.get(), total.get(), cost, warmed.get() * 1000 / cost);
+    }
+
+    /**
+     * 按id游标分页读取，每页交给写线程
+     */
+    private <T> void page(ExecutorService workers, Function<Long, List<T>> pageLoader,
+                          ToLongFunction<T> idGetter, Consumer<List<T>> writer) {
+        long intervalMillis = TimeUnit.SECONDS.toMillis(cacheProperties.getWarmUp().getProgressIntervalSeconds());
+        long start = System.currentTimeMillis();
+        long lastLog = start;
+        long lastId = 0;
+        while (true) {
+            List<T> rows = pageLoader.apply(lastId);
+            if (rows.isEmpty()) {
+                return;
+            }
+            lastId = idGetter.applyAsLong(rows.get(rows.size() - 1));
+            workers.execute(() -> {
+                try {
+                    writer.accept(rows);
+                    warmed.addAndGet(rows.size());
+                    checkReady();
+                } catch (RuntimeException e) {
+                    log.error("缓存预热写入失败", e);
+                }
+            });
+            long now = System.currentTimeMillis();
+            if (now - lastLog >= intervalMillis) {
+                lastLog = now;
+                log.info("缓存预热进度 {}/{}，{} 条/秒",
+                        warmed.get(), total.get(), warmed.get() * 1000 / Math.max(1, now - start));
+            }
+        }
+    }
+
+    private void warmShopTypes() {
+        List<String> types = shopTypeService.lambdaQuery()
+                .orderByAsc(ShopType::getSort)
+                .list()
+                .stream().map(JSONUtil::toJsonStr).toList();
+        if (types.isEmpty()) {
+            return;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            // 放在事务中替换，避免查询时读到空列表后重复追加
+            conn.multi();
+            conn.del(SHOP_TYPE_LIST_KEY);
+            conn.rPush(SHOP_TYPE_LIST_KEY, types.toArray(new String[0]));
+            conn.exec();
+            return null;
+        });
+        warmed.addAndGet(types.size());
+        checkReady();
+    }
+
+    private void warmShops(List<Shop> shops) {
+        Map<Long, Shop> shopMap = shops.stream().collect(Collectors.toMap(Shop::getId, s -> s));
+        cacheClient.setBatch(CACHE_SHOP_KEY, shopMap, CACHE_SHOP_LOGIC_TTL, TimeUnit.SECONDS);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Shop shop : shops) {
+                if (shop.getX() != null && shop.getY() != null) {
+                    conn.geoAdd(SHOP_GEO_KEY + shop.getTypeId(),
+                            new Point(shop.getX(), shop.getY()),
+                            shop.getId().toString());
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 库存只在不存在时写入，不能覆盖正在秒杀中的库存
+     */
+    private void warmSeckillStock(List<SeckillVoucher> vouchers) {
+        if (segmentedStock.isEnabled()) {
+            vouchers.forEach(v -> segmentedStock.init(v.getVoucherId(), v.getStock(), false));
+            return;
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (SeckillVoucher voucher : vouchers) {
+                conn.setNX(SECKILL_STOCK_KEY + voucher.getVoucherId(), String.valueOf(voucher.getStock()));
+            }
+            return null;
+        });
+    }
+
+    private void checkReady() {
+        if (!ready && warmed.get() >= total.get() * cacheProperties.getWarmUp().getReadyFraction()) {
+            markReady();
+        }
+    }
+
+    private synchronized void markReady() {
+        if (ready) {
+            return;
+        }
+        ready = true;
+        log.info("缓存预热达到 {}/{}，开始接收流量", warmed.get(), total.get());
+        AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+    }
+
+    public long getTotal() {
+        return total.get();
+    }
+
+    public long getWarmed() {
+        return warmed.get();
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public boolean isFinished() {
+        return finished;
+    }
+}
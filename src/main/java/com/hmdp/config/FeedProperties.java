@@ -0,0 +1,51 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.StreamRecovery;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 笔记推送到粉丝feed的相关配置，对应 application.yaml 中的 hmdp.feed
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.feed")
+public class FeedProperties {
+
+    /**
+     * 推送任务的消费方式
+     */
+    private FanOut fanOut = new FanOut();
+
+    /**
+     * pending任务的恢复和死信，推送任务耗时较长，退避时长比订单消息大
+     */
+    private StreamRecovery.Options recovery = defaultRecovery();
+
+    private static StreamRecovery.Options defaultRecovery() {
+        StreamRecovery.Options options = new StreamRecovery.Options();
+        options.setBackoffMillis(30000);
+        options.setMaxBackoffMillis(300000);
+        return options;
+    }
+
+    @Data
+    public static class FanOut {
+        /**
+         * 消费者组
+         */
+        private String group = "g1";
+        /**
+         * 本节点的推送线程数
+         */
+        private int threads = 2;
+        /**
+         * 每页查询的粉丝数，一页的ZADD在一次pipeline中发送
+         */
+        private int pageSize = 500;
+    }
+}
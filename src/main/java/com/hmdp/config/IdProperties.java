@@ -0,0 +1,77 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 全局id生成配置，对应 application.yaml 中的 hmdp.id
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.id")
+public class IdProperties {
+
+    /**
+     * id的生成方式：incr 每个id执行一次INCR，segment 用INCRBY批量租用号段后在本地分配，
+     * snowflake 毫秒时间戳 + 从redis租用的机器号 + 毫秒内序列号，生成时不访问redis
+     */
+    private String mode = "incr";
+
+    /**
+     * 号段模式
+     */
+    private Segment segment = new Segment();
+
+    /**
+     * snowflake模式
+     */
+    private Snowflake snowflake = new Snowflake();
+
+    @Data
+    public static class Segment {
+        /**
+         * 第一次租用的号段长度
+         */
+        private long initialStep = 1000;
+        /**
+         * 号段长度下限
+         */
+        private long minStep = 100;
+        /**
+         * 号段长度上限
+         */
+        private long maxStep = 100000;
+        /**
+         * 期望一个号段使用的时长，用得更快时下次租用的长度翻倍，更慢时减半
+         */
+        private long targetMillis = 5000;
+        /**
+         * 当前号段剩余比例降到该值时预取下一个号段
+         */
+        private double prefetchRatio = 0.5;
+    }
+
+    @Data
+    public static class Snowflake {
+        /**
+         * 机器号位数，最多 2^n 个节点同时运行
+         */
+        private int workerBits = 10;
+        /**
+         * 毫秒内序列号位数，每毫秒每个节点最多 2^n 个id
+         */
+        private int sequenceBits = 12;
+        /**
+         * 机器号租约时长，每 1/3 租约时长续约一次
+         */
+        private long leaseSeconds = 30;
+        /**
+         * 允许的时钟回拨，回拨不超过该值时沿用上次的时间戳继续生成，超过时拒绝生成
+         */
+        private long maxBackwardMillis = 1000;
+    }
+}
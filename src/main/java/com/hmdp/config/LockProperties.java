@@ -0,0 +1,27 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 分布式锁配置，对应 application.yaml 中的 hmdp.lock
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.lock")
+public class LockProperties {
+
+    /**
+     * 自动续期的锁每次续期的时长，每 1/3 时长续期一次，持有者宕机后最多这么久锁被释放
+     */
+    private long watchdogSeconds = 30;
+
+    /**
+     * 两级锁的本地分段数，向上取2的幂
+     */
+    private int stripes = 64;
+}
@@ -29,7 +29,8 @@ public class MvcConfig implements WebMvcConfigurer {
                         "shop/**",
                         "shop-type/**",
                         "/upload/**",
-                        "/voucher/**"
+                        "/voucher/**",
+                        "/actuator/**"
                 ).order(1);
         // 刷新token拦截器
         registry.addInterceptor(new RefreshTokenInterceptor(redisTemplate)).order(0);
@@ -0,0 +1,187 @@
+package com.hmdp.config;
+
+import com.hmdp.utils.StreamRecovery;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.hmdp.utils.RedisConstants.ORDER_STREAM_KEY;
+
+/**
+ * 秒杀订单相关配置，对应 application.yaml 中的 hmdp.order
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.order")
+public class OrderProperties {
+
+    /**
+     * 订单消息队列
+     */
+    private Stream stream = new Stream();
+
+    /**
+     * 订单消息队列的消费方式
+     */
+    private Consumer consumer = new Consumer();
+
+    /**
+     * pending消息的恢复和死信
+     */
+    private StreamRecovery.Options recovery = new StreamRecovery.Options();
+
+    /**
+     * 本地售罄标记
+     */
+    private SoldOut soldOut = new SoldOut();
+
+    /**
+     * 秒杀库存的分段
+     */
+    private Stock stock = new Stock();
+
+    /**
+     * 订单处理状态
+     */
+    private Status status = new Status();
+
+    /**
+     * redis库存与数据库的对账
+     */
+    private Reconcile reconcile = new Reconcile();
+
+    /**
+     * 订单所在分区的stream key，与 seckill.lua 的路由规则一致
+     */
+    public String streamKeyOf(Long userId, Long voucherId) {
+        int partitions = stream.getPartitions();
+        if (partitions <= 1) {
+            return ORDER_STREAM_KEY;
+        }
+        long routeId = "user".equals(stream.getRouteBy()) ? userId : voucherId;
+        return ORDER_STREAM_KEY + "." + (routeId % partitions);
+    }
+
+    /**
+     * 所有分区的stream key，分区数不大于1时只有 stream.orders
+     */
+    public List<String> streamKeys() {
+        int partitions = stream.getPartitions();
+        List<String> keys = new ArrayList<>(Math.max(partitions, 1));
+        if (partitions <= 1) {
+            keys.add(ORDER_STREAM_KEY);
+            return keys;
+        }
+        for (int i = 0; i < partitions; i++) {
+            keys.add(ORDER_STREAM_KEY + "." + i);
+        }
+        return keys;
+    }
+
+    @Data
+    public static class Stream {
+        /**
+         * 分区数，订单写入 stream.orders.{n}，不大于1时使用原来的 stream.orders
+         */
+        private int partitions = 1;
+        /**
+         * 分区依据：user 按用户id，voucher 按优惠券id
+         */
+        private String routeBy = "user";
+        /**
+         * 消费者组
+         */
+        private String group = "g1";
+    }
+
+    @Data
+    public static class Consumer {
+        /**
+         * single：逐条处理；batch：批量扣库存、批量插入、批量ACK
+         */
+        private String mode = "single";
+        /**
+         * 逐条处理时的写入方式，idempotent：依靠唯一索引幂等写入；lock：按用户加分布式锁后查询再写入
+         */
+        private String persist = "idempotent";
+        /**
+         * 批量模式下每批最多处理的消息数
+         */
+        private int batchSize = 100;
+        /**
+         * 批量模式下收到第一条消息后最多再等待多久凑满一批
+         */
+        private long lingerMillis = 50;
+        /**
+         * 本节点的消费线程数，每个线程领取一部分分区
+         */
+        private int threads = 1;
+        /**
+         * 本节点的消费者标识，为空时使用 主机名-进程号-随机数
+         */
+        private String instanceId = "";
+        /**
+         * 分区租约时长，消费者宕机后其他消费者最多等待这么久接管分区
+         */
+        private long leaseSeconds = 30;
+    }
+
+    @Data
+    public static class SoldOut {
+        /**
+         * 是否开启本地售罄标记
+         */
+        private boolean enabled = true;
+        /**
+         * 标记的有效期，过期后重新由redis判断
+         */
+        private long ttlSeconds = 60;
+    }
+
+    @Data
+    public static class Stock {
+        /**
+         * 每张秒杀券的库存分段数，大于1时库存拆分到 seckill:stock:{voucherId:n}，
+         * 只对之后新增或预热的秒杀券生效，秒杀进行中不能修改
+         */
+        private int segments = 1;
+    }
+
+    @Data
+    public static class Status {
+        /**
+         * 订单状态在redis中保存的时长
+         */
+        private long ttlHours = 24;
+        /**
+         * 长轮询查询状态时最多等待的时间
+         */
+        private long maxWaitMillis = 10000;
+    }
+
+    @Data
+    public static class Reconcile {
+        /**
+         * 是否开启定时对账
+         */
+        private boolean enabled = true;
+        /**
+         * 两次对账的间隔，每次只处理一批秒杀券
+         */
+        private long intervalMillis = 10000;
+        /**
+         * 每次对账的秒杀券数量
+         */
+        private int chunkSize = 200;
+        /**
+         * 修复下单用户时每次扫描的用户数
+         */
+        private int scanBatch = 500;
+    }
+}
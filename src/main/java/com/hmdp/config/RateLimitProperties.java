@@ -0,0 +1,37 @@
+package com.hmdp.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * 接口限流配置，对应 application.yaml 中的 hmdp.rate-limit
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "hmdp.rate-limit")
+public class RateLimitProperties {
+
+    /**
+     * 是否开启 @RateLimit 限流
+     */
+    private boolean enabled = true;
+
+    /**
+     * 本地令牌桶的最大数量，按用户限流时每个用户一个桶
+     */
+    private long maxLocalBuckets = 100000;
+
+    /**
+     * 本地令牌桶多久未使用后回收
+     */
+    private long localIdleSeconds = 60;
+
+    /**
+     * redis异常时是否放行，关闭后redis异常的请求按超限处理
+     */
+    private boolean failOpen = true;
+}
@@ -1,22 +0,0 @@
-package com.hmdp.config;
-
-import org.redisson.Redisson;
-import org.redisson.api.RedissonClient;
-import org.redisson.config.Config;
-import org.springframework.context.annotation.Bean;
-import org.springframework.context.annotation.Configuration;
-
-/**
- * @author chake
- * @since 2025/8/8
- */
-@Configuration
-public class RedissonConfig {
-
-    @Bean
-    public RedissonClient redissonClient() {
-        Config config = new Config();
-        config.useSingleServer().setAddress("redis://192.168.150.101:6379").setPassword("123321");
-        return Redisson.create(config);
-    }
-}
@@ -0,0 +1,81 @@
+package com.hmdp.controller;
+
+import com.hmdp.config.CacheWarmUpRunner;
+import com.hmdp.dto.Result;
+import com.hmdp.utils.CacheRebuildScheduler;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.SingleFlight;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 缓存运行状态
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@RestController
+@RequestMapping("/cache")
+@RequiredArgsConstructor
+public class CacheController {
+
+    private final SingleFlight singleFlight;
+
+    private final CacheRebuildScheduler rebuildScheduler;
+
+    private final CacheWarmUpRunner warmUpRunner;
+
+    private final HotKeyDetector hotKeyDetector;
+
+    /**
+     * 查询请求合并、缓存重建的统计数据
+     */
+    @GetMapping("/stats")
+    public Result stats() {
+        Map<String, Object> singleFlightStats = new LinkedHashMap<>();
+        singleFlightStats.put("loaderExecutions", singleFlight.getLoaderExecutions());
+        singleFlightStats.put("coalescedWaiters", singleFlight.getCoalescedWaiters());
+        singleFlightStats.put("waitTimeouts", singleFlight.getWaitTimeouts());
+        singleFlightStats.put("remoteWaiters", singleFlight.getRemoteWaiters());
+        Map<String, Object> rebuildStats = new LinkedHashMap<>();
+        rebuildStats.put("queueDepth", rebuildScheduler.getQueueDepth());
+        rebuildStats.put("active", rebuildScheduler.getActiveCount());
+        rebuildStats.put("submitted", rebuildScheduler.getSubmitted());
+        rebuildStats.put("deduplicated", rebuildScheduler.getDeduplicated());
+        rebuildStats.put("rejected", rebuildScheduler.getRejected());
+        rebuildStats.put("completed", rebuildScheduler.getCompleted());
+        rebuildStats.put("failures", rebuildScheduler.getFailures());
+        rebuildStats.put("avgRebuildMillis", rebuildScheduler.getAvgRebuildMillis());
+        rebuildStats.put("maxRebuildMillis", rebuildScheduler.getMaxRebuildMillis());
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("singleFlight", singleFlightStats);
+        stats.put("rebuild", rebuildStats);
+        return Result.ok(stats);
+    }
+
+    /**
+     * 启动预热进度
+     */
+    @GetMapping("/warm-up")
+    public Result warmUp() {
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("total", warmUpRunner.getTotal());
+        progress.put("warmed", warmUpRunner.getWarmed());
+        progress.put("ready", warmUpRunner.isReady());
+        progress.put("finished", warmUpRunner.isFinished());
+        return Result.ok(progress);
+    }
+
+    /**
+     * 本节点当前的热点key，按访问次数倒序
+     */
+    @GetMapping("/hot-keys")
+    public Result hotKeys() {
+        return Result.ok(hotKeyDetector.hotKeys());
+    }
+}
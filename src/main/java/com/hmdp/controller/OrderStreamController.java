@@ -0,0 +1,56 @@
+package com.hmdp.controller;
+
+import com.hmdp.dto.Result;
+import com.hmdp.service.impl.VoucherOrderConsumer;
+import com.hmdp.utils.StreamRecovery;
+import lombok.RequiredArgsConstructor;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 订单消息队列的恢复状态和死信管理
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@RestController
+@RequestMapping("/order-stream")
+@RequiredArgsConstructor
+public class OrderStreamController {
+
+    private final VoucherOrderConsumer voucherOrderConsumer;
+
+    /**
+     * 查询pending消息恢复的统计数据
+     */
+    @GetMapping("/stats")
+    public Result stats() {
+        StreamRecovery recovery = voucherOrderConsumer.getRecovery();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("claimed", recovery.getClaimed());
+        stats.put("recovered", recovery.getRecovered());
+        stats.put("deadLettered", recovery.getDeadLettered());
+        stats.put("deadLetterSize", recovery.getDeadLetterSize());
+        return Result.ok(stats);
+    }
+
+    /**
+     * 查看死信消息
+     */
+    @GetMapping("/dlq")
+    public Result deadLetters(@RequestParam(value = "count", defaultValue = "20") Integer count) {
+        return Result.ok(voucherOrderConsumer.getRecovery().deadLetters(count));
+    }
+
+    /**
+     * 重新投递死信消息，指定ids时只投递这些消息，否则按顺序投递最多count条
+     */
+    @PostMapping("/dlq/replay")
+    public Result replay(@RequestParam(value = "ids", required = false) List<String> ids,
+                         @RequestParam(value = "count", defaultValue = "100") Integer count) {
+        return Result.ok(voucherOrderConsumer.getRecovery().replay(ids, count));
+    }
+}
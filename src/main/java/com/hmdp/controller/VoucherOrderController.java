@@ -1,13 +1,14 @@
 package com.hmdp.controller;
 
 
+import com.hmdp.config.OrderProperties;
 import com.hmdp.dto.Result;
+import com.hmdp.ratelimit.RateLimit;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.OrderStatusStore;
 import lombok.RequiredArgsConstructor;
-import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.PostMapping;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 
 /**
  * <p>
@@ -24,8 +25,28 @@ public class VoucherOrderController {
 
     private final IVoucherOrderService voucherOrderService;
 
+    private final OrderStatusStore orderStatusStore;
+
+    private final OrderProperties orderProperties;
+
+    /**
+     * 每个节点每张券每秒最多放行2000个请求，每个用户每张券10秒内最多5个请求
+     */
+    @RateLimit(name = "seckill", key = "#voucherId", permits = 2000)
+    @RateLimit(name = "seckill", key = "#voucherId", perUser = true, permits = 5, period = 10,
+            mode = RateLimit.Mode.REDIS)
     @PostMapping("seckill/{id}")
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
         return voucherOrderService.seckillVoucher(voucherId);
     }
+
+    /**
+     * 查询订单处理状态，只读redis。wait大于0时为长轮询，订单仍在处理中则最多等待wait毫秒
+     */
+    @GetMapping("{id}/status")
+    public DeferredResult<Result> queryOrderStatus(@PathVariable("id") Long orderId,
+                                                   @RequestParam(value = "wait", defaultValue = "0") Long wait) {
+        long timeout = Math.min(wait, orderProperties.getStatus().getMaxWaitMillis());
+        return orderStatusStore.await(orderId, timeout);
+    }
 }
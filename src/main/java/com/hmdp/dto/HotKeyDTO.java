@@ -0,0 +1,22 @@
+package com.hmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * @author chake
+ * @since 2026/10/18
+ */
+@Data
+@AllArgsConstructor
+public class HotKeyDTO {
+    private String key;
+    /**
+     * 统计窗口内的估计访问次数
+     */
+    private Long count;
+    /**
+     * 成为热点的时间，毫秒时间戳
+     */
+    private Long since;
+}
@@ -0,0 +1,16 @@
+package com.hmdp.dto;
+
+import lombok.Data;
+
+/**
+ * 同一条SQL读出的秒杀券库存和订单数，两者之和在下单过程中保持不变
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Data
+public class VoucherStockDTO {
+    private Long voucherId;
+    private Long stock;
+    private Long orders;
+}
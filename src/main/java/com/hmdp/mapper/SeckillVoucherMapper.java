@@ -1,7 +1,12 @@
 package com.hmdp.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.hmdp.dto.VoucherStockDTO;
 import com.hmdp.entity.SeckillVoucher;
+import org.apache.ibatis.annotations.Param;
+
+import java.time.LocalDateTime;
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +18,10 @@ import com.hmdp.entity.SeckillVoucher;
  */
 public interface SeckillVoucherMapper extends BaseMapper<SeckillVoucher> {
 
+    /**
+     * 按id游标读取未结束秒杀券的库存和订单数，一条SQL读取保证两者一致
+     */
+    List<VoucherStockDTO> queryStockSnapshot(@Param("lastId") long lastId,
+                                             @Param("now") LocalDateTime now,
+                                             @Param("limit") int limit);
 }
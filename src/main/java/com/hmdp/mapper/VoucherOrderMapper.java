@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.hmdp.entity.VoucherOrder;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 /**
  * <p>
@@ -13,4 +16,16 @@ import com.hmdp.entity.VoucherOrder;
  */
 public interface VoucherOrderMapper extends BaseMapper<VoucherOrder> {
 
+    /**
+     * 插入订单，违反 uk_voucher_user 或主键时忽略。
+     * 已有数据库需先执行 sql/20261018_tb_voucher_order_uk_voucher_user.sql 创建该索引，否则重复订单会被写入
+     *
+     * @return 1 插入成功，0 已存在
+     */
+    int insertIgnore(VoucherOrder order);
+
+    /**
+     * 多行插入订单
+     */
+    int insertBatch(@Param("orders") List<VoucherOrder> orders);
 }
@@ -0,0 +1,68 @@
+package com.hmdp.ratelimit;
+
+import java.lang.annotation.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 接口限流，可重复标注，按 LOCAL 在前、REDIS 在后的顺序依次判断，任意一条超限即返回429。
+ * <pre>
+ * // 每个节点每张券每秒最多2000个请求
+ * &#64;RateLimit(name = "seckill", key = "#voucherId", permits = 2000)
+ * // 每个用户每张券10秒内最多5个请求，所有节点共享
+ * &#64;RateLimit(name = "seckill", key = "#voucherId", perUser = true, permits = 5, period = 10, mode = Mode.REDIS)
+ * </pre>
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Repeatable(RateLimits.class)
+public @interface RateLimit {
+
+    enum Mode {
+        /**
+         * 本节点的令牌桶，不访问redis
+         */
+        LOCAL,
+        /**
+         * redis滑动窗口，所有节点共享配额
+         */
+        REDIS
+    }
+
+    /**
+     * 限流规则名称，作为计数key和指标标签
+     */
+    String name();
+
+    /**
+     * 限流维度的SpEL表达式，如 #voucherId，为空时整个接口共享配额
+     */
+    String key() default "";
+
+    /**
+     * 是否按用户分别计数，未登录时按客户端ip
+     */
+    boolean perUser() default false;
+
+    /**
+     * 一个周期内允许的请求数
+     */
+    long permits();
+
+    /**
+     * 周期长度
+     */
+    long period() default 1;
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    Mode mode() default Mode.LOCAL;
+
+    /**
+     * 超限时返回的提示
+     */
+    String message() default "请求过于频繁，请稍后再试";
+}
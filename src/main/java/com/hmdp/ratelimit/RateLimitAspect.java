@@ -0,0 +1,158 @@
+package com.hmdp.ratelimit;
+
+import cn.hutool.core.lang.UUID;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.RateLimitProperties;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.utils.UserHolder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.RATE_LIMIT_KEY;
+
+/**
+ * 处理 {@link RateLimit}，在进入接口之前拒绝超限的请求，不再执行用户查询、id生成和lua脚本
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+@Aspect
+@Component
+public class RateLimitAspect {
+
+    private static final DefaultRedisScript<Long> RATE_LIMIT_SCRIPT;
+
+    static {
+        RATE_LIMIT_SCRIPT = new DefaultRedisScript<>();
+        RATE_LIMIT_SCRIPT.setLocation(new ClassPathResource("rate_limit.lua"));
+        RATE_LIMIT_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final String ID_PREFIX = UUID.randomUUID().toString(true) + "-";
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RateLimitProperties properties;
+
+    private final MeterRegistry meterRegistry;
+
+    private final Cache<String, TokenBucket> buckets;
+
+    private final SpelExpressionParser parser = new SpelExpressionParser();
+
+    private final ParameterNameDiscoverer nameDiscoverer = new DefaultParameterNameDiscoverer();
+
+    private final Map<String, Expression> expressions = new ConcurrentHashMap<>();
+
+    /**
+     * 方法 -> 排好序的限流规则，本地规则在前
+     */
+    private final Map<Method, RateLimit[]> rules = new ConcurrentHashMap<>();
+
+    private final Map<String, Counter> rejected = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    public RateLimitAspect(StringRedisTemplate redisTemplate, RateLimitProperties properties,
+                           MeterRegistry meterRegistry) {
+        this.redisTemplate = redisTemplate;
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(properties.getMaxLocalBuckets())
+                .expireAfterAccess(properties.getLocalIdleSeconds(), TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Around("@annotation(com.hmdp.ratelimit.RateLimit) || @annotation(com.hmdp.ratelimit.RateLimits)")
+    public Object around(ProceedingJoinPoint joinPoint) throws Throwable {
+        if (!properties.isEnabled()) {
+            return joinPoint.proceed();
+        }
+        Method method = ((MethodSignature) joinPoint.getSignature()).getMethod();
+        RateLimit[] limits = rules.computeIfAbsent(method, m -> {
+            RateLimit[] sorted = m.getAnnotationsByType(RateLimit.class);
+            Arrays.sort(sorted, Comparator.comparing(RateLimit::mode));
+            return sorted;
+        });
+        for (RateLimit limit : limits) {
+            String key = buildKey(limit, method, joinPoint.getArgs());
+            boolean allowed = limit.mode() == RateLimit.Mode.LOCAL ? tryLocal(limit, key) : tryRedis(limit, key);
+            if (!allowed) {
+                rejected.computeIfAbsent(limit.name(), name -> Counter.builder("ratelimit.rejected")
+                        .tag("name", name)
+                        .register(meterRegistry)).increment();
+                throw new RateLimitException(limit.message());
+            }
+        }
+        return joinPoint.proceed();
+    }
+
+    private boolean tryLocal(RateLimit limit, String key) {
+        return buckets.get(key, k -> new TokenBucket(limit.permits(), limit.unit().toNanos(limit.period())))
+                .tryAcquire();
+    }
+
+    private boolean tryRedis(RateLimit limit, String key) {
+        try {
+            Long result = redisTemplate.execute(RATE_LIMIT_SCRIPT,
+                    Collections.singletonList(RATE_LIMIT_KEY + key),
+                    String.valueOf(limit.unit().toMillis(limit.period())),
+                    String.valueOf(limit.permits()),
+                    ID_PREFIX + sequence.incrementAndGet());
+            return result != null && result == 1;
+        } catch (RuntimeException e) {
+            log.warn("限流脚本执行失败，规则：{}", limit.name(), e);
+            return properties.isFailOpen();
+        }
+    }
+
+    /**
+     * 限流key：规则名:维度值:用户id，本地与redis规则同名时key也相同，各自计数
+     */
+    private String buildKey(RateLimit limit, Method method, Object[] args) {
+        StringBuilder key = new StringBuilder(limit.name());
+        if (!limit.key().isEmpty()) {
+            Expression expression = expressions.computeIfAbsent(limit.key(), parser::parseExpression);
+            MethodBasedEvaluationContext context = new MethodBasedEvaluationContext(null, method, args, nameDiscoverer);
+            key.append(':').append(expression.getValue(context));
+        }
+        if (limit.perUser()) {
+            UserDTO user = UserHolder.getUser();
+            key.append(':').append(user != null ? user.getId() : clientIp());
+        }
+        return key.toString();
+    }
+
+    private String clientIp() {
+        ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
+        return attributes == null ? "unknown" : attributes.getRequest().getRemoteAddr();
+    }
+}
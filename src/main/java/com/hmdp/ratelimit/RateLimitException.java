@@ -0,0 +1,15 @@
+package com.hmdp.ratelimit;
+
+/**
+ * 请求超过限流配额，由 WebExceptionAdvice 转为429。
+ * 被拒绝的请求量很大，不记录异常栈
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+public class RateLimitException extends RuntimeException {
+
+    public RateLimitException(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,17 @@
+package com.hmdp.ratelimit;
+
+import java.lang.annotation.*;
+
+/**
+ * {@link RateLimit} 的容器注解
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Documented
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RateLimits {
+
+    RateLimit[] value();
+}
@@ -0,0 +1,45 @@
+package com.hmdp.ratelimit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 无锁令牌桶，容量为一个周期的请求数，按固定速率补充。
+ * 只记录桶中令牌耗尽的理论时间点(GCRA)，每次获取令牌时把它向后推一个发放间隔，不需要后台补充线程
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+public class TokenBucket {
+
+    /**
+     * 发放一个令牌的间隔
+     */
+    private final long intervalNanos;
+
+    /**
+     * 允许超前的时间，即桶的容量
+     */
+    private final long burstNanos;
+
+    private final AtomicLong theoreticalArrival;
+
+    public TokenBucket(long permits, long periodNanos) {
+        this.intervalNanos = Math.max(1, periodNanos / Math.max(1, permits));
+        this.burstNanos = periodNanos;
+        this.theoreticalArrival = new AtomicLong(System.nanoTime());
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            long now = System.nanoTime();
+            long tat = theoreticalArrival.get();
+            long next = Math.max(tat, now) + intervalNanos;
+            if (next - now > burstNanos) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(tat, next)) {
+                return true;
+            }
+        }
+    }
+}
@@ -4,6 +4,9 @@ import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 
+import java.util.List;
+import java.util.Set;
+
 /**
  * <p>
  *  服务类
@@ -16,5 +19,24 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     Result seckillVoucher(Long voucherId);
 
-    void createVoucherOrder(VoucherOrder voucherId);
+    /**
+     * 创建订单
+     *
+     * @return 订单是否已写入数据库，重复投递的已创建订单也返回true
+     */
+    boolean createVoucherOrder(VoucherOrder voucherOrder);
+
+    /**
+     * 依靠唯一索引保证一人一单的幂等写入，不需要分布式锁和count查询
+     *
+     * @return 订单是否已写入数据库，重复投递的已创建订单也返回true
+     */
+    boolean createVoucherOrderIdempotent(VoucherOrder voucherOrder);
+
+    /**
+     * 批量创建订单，按优惠券汇总扣减库存后多行插入
+     *
+     * @return 已写入数据库的订单id，包括重复投递的已创建订单
+     */
+    Set<Long> createVoucherOrders(List<VoucherOrder> voucherOrders);
 }
@@ -9,25 +9,26 @@ import com.hmdp.dto.Result;
 import com.hmdp.dto.ScrollResult;
 import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
-import com.hmdp.entity.Follow;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
-import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.RedisBloomFilter;
 import com.hmdp.utils.RedisConstants;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 import lombok.RequiredArgsConstructor;
+import org.springframework.data.redis.connection.stream.StreamRecords;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.ZSetOperations;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
-import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -45,10 +46,16 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
 
     private final StringRedisTemplate redisTemplate;
 
-    private final IFollowService followService;
+    private final RedisBloomFilter blogBloomFilter;
+
+    private final CacheClient cacheClient;
 
     @Override
     public Result queryBlogById(Long id) {
+        // 0. 布隆过滤器判断不存在，直接返回
+        if (!blogBloomFilter.mightContain(id)) {
+            return Result.fail("该博客不存在");
+        }
         // 1. 查询blog
         Blog blog = getById(id);
         if (blog == null) {
@@ -103,6 +110,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             // 3.2 保存用户到redis zSet集合 zAdd key value score
             if (isSuccess) {
                 redisTemplate.opsForZSet().add(key, userId.toString(), System.currentTimeMillis());
+                cacheClient.invalidate(CACHE_BLOG_KEY + id);
             }
         } else {
             // 4. 已点赞
@@ -114,6 +122,7 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
             // 4.2 从redis set集合中删除用户
             if (isSuccess) {
                 redisTemplate.opsForZSet().remove(key, userId.toString());
+                cacheClient.invalidate(CACHE_BLOG_KEY + id);
             }
         }
         return Result.ok();
@@ -154,21 +163,15 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if (!isSuccess) {
             return Result.fail("保存失败");
         }
-        // 3. 查询笔记作者的所有粉丝
-        List<Follow> followList = followService.lambdaQuery()
-                .eq(Follow::getFollowUserId, userDTO.getId())
-                .list();
-        // 4. 推送笔记到粉丝的feed
-        for (Follow follow : followList) {
-            // 4.1 获取粉丝id
-            Long userId = follow.getUserId();
-            // 4.2 推送
-            String key = FEED_KEY + userId;
-            redisTemplate.opsForZSet().add(key,
-                    blog.getId().toString(),
-                    System.currentTimeMillis());
-        }
-        // 5. 返回id
+        // 2.1 加入布隆过滤器
+        blogBloomFilter.add(blog.getId());
+        // 3. 写入推送任务，由 FeedFanoutConsumer 在后台分页推送给粉丝，发布耗时与粉丝数无关
+        Map<String, String> task = new HashMap<>(4);
+        task.put("blogId", blog.getId().toString());
+        task.put("userId", userDTO.getId().toString());
+        task.put("timestamp", String.valueOf(System.currentTimeMillis()));
+        redisTemplate.opsForStream().add(StreamRecords.string(task).withStreamKey(FEED_STREAM_KEY));
+        // 4. 返回id
         return Result.ok(blog.getId());
     }
 
@@ -200,11 +203,14 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
                 offset1 = 1;
             }
         }
-        // 5. 根据blogId查询blog
-        List<Blog> blogList = this.lambdaQuery()
-                .in(Blog::getId, blogIds)
-                .last("ORDER BY FIELD(id, " + StrUtil.join(",", blogIds) + ")")
-                .list();
+        // 5. 根据blogId批量查询blog，缓存中的对象是共享的，复制后再填充用户和点赞信息
+        List<Blog> blogList = cacheClient.queryBatch(
+                        CACHE_BLOG_KEY, LOCK_BLOG_KEY, blogIds, Blog.class, this::listByIds, Blog::getId,
+                        CACHE_BLOG_TTL, TimeUnit.MINUTES)
+                .stream()
+                .filter(Objects::nonNull)
+                .map(blog -> BeanUtil.copyProperties(blog, Blog.class))
+                .toList();
 
         for (Blog blog : blogList) {
             // 5.1 查询用户信息
@@ -0,0 +1,209 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.config.FeedProperties;
+import com.hmdp.entity.Follow;
+import com.hmdp.service.IFollowService;
+import com.hmdp.utils.StreamRecovery;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * 笔记推送任务的消费者。
+ * 发布笔记时只写入一条推送任务到 stream.feed，由这里的后台线程按粉丝表主键分页查询粉丝，
+ * 每页的ZADD与进度在一次pipeline中发送，进度记录在 stream.feed.checkpoint 中，
+ * 节点宕机后任务由恢复流程认领，从上次的进度继续推送；多次失败的任务转入死信 stream.feed.dlq，进度保留，
+ * 通过 /feed-stream/dlq/replay 重新投递后继续推送。
+ * <p>
+ * 进度只在任务仍属于当前消费者时写入，任务被其他消费者接手后原消费者停止推送。
+ * 同一个任务被重复执行时，ZADD写入的成员和分数都相同，结果不变。
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class FeedFanoutConsumer implements DisposableBean {
+
+    private static final DefaultRedisScript<Long> CHECKPOINT_SCRIPT;
+
+    static {
+        CHECKPOINT_SCRIPT = new DefaultRedisScript<>();
+        CHECKPOINT_SCRIPT.setLocation(new ClassPathResource("feed_checkpoint.lua"));
+        CHECKPOINT_SCRIPT.setResultType(Long.class);
+    }
+
+    private final IFollowService followService;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final FeedProperties feedProperties;
+
+    private ExecutorService executor;
+
+    /**
+     * pending任务的恢复和死信
+     */
+    @Getter
+    private StreamRecovery recovery;
+
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() {
+        // 1. 创建消费者组，stream不存在时一并创建
+        String group = feedProperties.getFanOut().getGroup();
+        try {
+            redisTemplate.opsForStream().createGroup(FEED_STREAM_KEY, ReadOffset.from("0"), group);
+        } catch (RedisSystemException e) {
+            // 消费者组已存在
+            if (!StrUtil.contains(e.getMessage(), "BUSYGROUP")) {
+                throw e;
+            }
+        }
+        recovery = new StreamRecovery(redisTemplate, group, FEED_STREAM_DLQ_KEY, feedProperties.getRecovery());
+        // 2. 启动推送线程，每个线程有唯一的消费者名称
+        String instanceId = ManagementFactory.getRuntimeMXBean().getName() + "-" + RandomUtil.randomString(4);
+        int threads = Math.max(1, feedProperties.getFanOut().getThreads());
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads,
+                r -> new Thread(r, "feed-fanout-" + threadIndex.incrementAndGet()));
+        for (int i = 0; i < threads; i++) {
+            executor.submit(new Worker(instanceId + "-" + i));
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            // 未完成的任务留在pending列表中，由其他节点从进度处继续
+            executor.shutdownNow();
+        }
+    }
+
+    private class Worker implements Runnable {
+
+        private final String consumerName;
+
+        private long nextRecovery;
+
+        Worker(String consumerName) {
+            this.consumerName = consumerName;
+        }
+
+        @Override
+        public void run() {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                try {
+                    // 1. 定期恢复pending任务，包括已宕机消费者留下的
+                    if (System.currentTimeMillis() >= nextRecovery) {
+                        nextRecovery = System.currentTimeMillis() + feedProperties.getRecovery().getIntervalMillis();
+                        recovery.recover(FEED_STREAM_KEY, consumerName, this::handle);
+                    }
+                    // 2. XREADGROUP GROUP g1 consumer COUNT 1 BLOCK 2000 STREAMS stream.feed >
+                    List<MapRecord<String, Object, Object>> list = redisTemplate.opsForStream().read(
+                            Consumer.from(feedProperties.getFanOut().getGroup(), consumerName),
+                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
+                            StreamOffset.create(FEED_STREAM_KEY, ReadOffset.lastConsumed()));
+                    if (list == null || list.isEmpty()) {
+                        continue;
+                    }
+                    handle(list.get(0));
+                } catch (Exception e) {
+                    if (!running) {
+                        break;
+                    }
+                    // 失败的任务留在pending列表中，由恢复流程按退避时间从进度处重试
+                    log.error("推送笔记异常", e);
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+        /**
+         * 从上次的进度开始，逐页推送给作者的粉丝
+         */
+        private void handle(MapRecord<String, Object, Object> record) {
+            String blogId = record.getValue().get("blogId").toString();
+            long authorId = Long.parseLong(record.getValue().get("userId").toString());
+            double score = Double.parseDouble(record.getValue().get("timestamp").toString());
+            String group = feedProperties.getFanOut().getGroup();
+            int pageSize = Math.max(1, feedProperties.getFanOut().getPageSize());
+            // 1. 读取进度，即已推送的最后一条关注记录的id
+            Object checkpoint = redisTemplate.opsForHash().get(FEED_STREAM_CHECKPOINT_KEY, blogId);
+            long lastId = checkpoint == null ? 0 : Long.parseLong(checkpoint.toString());
+            while (running) {
+                // 2. 按主键分页查询粉丝，不随页数变慢
+                List<Follow> page = followService.lambdaQuery()
+                        .select(Follow::getId, Follow::getUserId)
+                        .eq(Follow::getFollowUserId, authorId)
+                        .gt(Follow::getId, lastId)
+                        .orderByAsc(Follow::getId)
+                        .last("LIMIT " + pageSize)
+                        .list();
+                if (page.isEmpty()) {
+                    break;
+                }
+                long pageLastId = page.get(page.size() - 1).getId();
+                // 3. 一页的ZADD和进度在一次pipeline中发送，进度脚本同时重置任务的空闲时间，避免长任务被恢复流程认领
+                String script = CHECKPOINT_SCRIPT.getScriptAsString();
+                List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                    StringRedisConnection conn = (StringRedisConnection) connection;
+                    for (Follow follow : page) {
+                        conn.zAdd(FEED_KEY + follow.getUserId(), score, blogId);
+                    }
+                    conn.eval(script, ReturnType.INTEGER, 2, FEED_STREAM_KEY, FEED_STREAM_CHECKPOINT_KEY,
+                            group, consumerName, record.getId().getValue(), blogId, String.valueOf(pageLastId), "page");
+                    return null;
+                });
+                if (Long.valueOf(0).equals(results.get(results.size() - 1))) {
+                    // 3.1 任务已被其他消费者接手，由它继续推送
+                    log.warn("推送任务已被其他消费者接手，停止推送，笔记：{}，任务：{}", blogId, record.getId());
+                    return;
+                }
+                lastId = pageLastId;
+                if (page.size() < pageSize) {
+                    break;
+                }
+            }
+            if (!running) {
+                // 应用关闭，进度已保存
+                return;
+            }
+            // 4. 推送完成，任务仍属于自己时删除进度和任务
+            redisTemplate.execute(CHECKPOINT_SCRIPT, Arrays.asList(FEED_STREAM_KEY, FEED_STREAM_CHECKPOINT_KEY),
+                    group, consumerName, record.getId().getValue(), blogId, String.valueOf(lastId), "done");
+        }
+    }
+}
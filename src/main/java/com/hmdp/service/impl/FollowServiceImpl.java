@@ -4,11 +4,12 @@ import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Follow;
-import com.hmdp.entity.User;
 import com.hmdp.mapper.FollowMapper;
 import com.hmdp.service.IFollowService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.UserHolder;
 import lombok.RequiredArgsConstructor;
 import org.springframework.data.redis.core.StringRedisTemplate;
@@ -16,9 +17,11 @@ import org.springframework.stereotype.Service;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
-import static com.hmdp.utils.RedisConstants.FOLLOW_USER_KEY;
+import static com.hmdp.utils.RedisConstants.*;
 
 /**
  * <p>
@@ -36,6 +39,8 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
 
     private final IUserService userService;
 
+    private final CacheClient cacheClient;
+
     @Override
     public Result follow(Long followUserId, boolean isFollow) {
         // 1. 获取当前用户
@@ -91,10 +96,15 @@ public class FollowServiceImpl extends ServiceImpl<FollowMapper, Follow> impleme
         List<Long> ids = intersect.stream()
                 .map(Long::valueOf)
                 .toList();
-        // 4. 查询用户
-        List<User> userList = userService.listByIds(ids);
-        List<User> userDTOList = userList.stream()
-                .map(u -> BeanUtil.copyProperties(u, User.class))
+        // 4. 批量查询用户，只缓存对外展示的字段
+        List<UserDTO> userDTOList = cacheClient.queryBatch(
+                        CACHE_USER_KEY, LOCK_USER_KEY, ids, UserDTO.class,
+                        userIds -> userService.listByIds(userIds).stream()
+                                .map(u -> BeanUtil.copyProperties(u, UserDTO.class))
+                                .toList(),
+                        UserDTO::getId, CACHE_USER_TTL, TimeUnit.MINUTES)
+                .stream()
+                .filter(Objects::nonNull)
                 .toList();
         return Result.ok(userDTOList);
     }
@@ -1,7 +1,7 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
 import cn.hutool.json.JSONUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
@@ -26,6 +26,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.TimeUnit;
 
 import static com.hmdp.utils.RedisConstants.*;
@@ -51,9 +52,9 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
 //        // 互斥锁解决缓存击穿问题
 //        Shop shop = cacheClient.queryWithPassThrough(
 //                CACHE_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        // 逻辑过期解决缓存击穿问题
-        Shop shop = cacheClient.queryWithLogicExpire(
-                CACHE_SHOP_KEY, LOCK_SHOP_KEY, id, Shop.class, this::getById, 20L, TimeUnit.SECONDS);
+        // 按配置的策略查询，默认逻辑过期解决缓存击穿问题
+        Shop shop = cacheClient.query(
+                CACHE_SHOP_KEY, LOCK_SHOP_KEY, id, Shop.class, this::getById, CACHE_SHOP_LOGIC_TTL, TimeUnit.SECONDS);
         if (shop == null) {
             return Result.fail("商铺不存在");
         }
@@ -70,9 +71,9 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         }
         // 1. 更新数据库
         this.updateById(shop);
-        // 2. 删除缓存
+        // 2. 删除缓存，同时通知所有节点删除本地缓存
         String key = CACHE_SHOP_KEY + shop.getId();
-        redisTemplate.delete(key);
+        cacheClient.invalidate(key);
         return Result.ok();
     }
 
@@ -115,12 +116,14 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
                     Distance distance = result.getDistance();
                     distanceMap.put(shopIdStr, distance);
                 });
-        // 5. 查询Shop
-
-        List<Shop> shopList = this.lambdaQuery()
-                .in(Shop::getId, shopIdList)
-                .last("ORDER BY FIELD(id, " + StrUtil.join(",", shopIdList) + ")")
-                .list();
+        // 5. 批量查询Shop，缓存中的对象是共享的，复制后再设置距离
+        List<Shop> shopList = cacheClient.queryBatch(
+                        CACHE_SHOP_KEY, LOCK_SHOP_KEY, shopIdList, Shop.class, this::listByIds, Shop::getId,
+                        CACHE_SHOP_LOGIC_TTL, TimeUnit.SECONDS)
+                .stream()
+                .filter(Objects::nonNull)
+                .map(shop -> BeanUtil.copyProperties(shop, Shop.class))
+                .toList();
         for (Shop shop : shopList) {
             shop.setDistance(distanceMap.get(shop.getId().toString()).getValue());
         }
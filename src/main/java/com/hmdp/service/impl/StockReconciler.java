@@ -0,0 +1,379 @@
+package com.hmdp.service.impl;
+
+import com.hmdp.config.OrderProperties;
+import com.hmdp.dto.VoucherStockDTO;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.mapper.SeckillVoucherMapper;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.ILock;
+import com.hmdp.utils.OrderStatus;
+import com.hmdp.utils.OrderStatusStore;
+import com.hmdp.utils.RedisLockFactory;
+import com.hmdp.utils.SegmentedStock;
+import com.hmdp.utils.SoldOutRegistry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamInfo;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.*;
+
+/**
+ * redis秒杀库存与数据库的对账。
+ * 下单时redis的 库存+订单集合大小 与数据库的 库存+订单数 都保持不变，据此发现并修复偏差：
+ * <ul>
+ *     <li>总量不一致(redis重启丢数据、key被误删)：按数据库总量原子地修正redis库存</li>
+ *     <li>数据库有订单而redis没有下单记录：补上下单记录并扣减redis库存</li>
+ *     <li>redis有下单记录而数据库连续两轮都没有订单(消息丢失)：订单消息全部处理完(没有pending和未投递的消息)后，
+ *     释放订单状态不是处理中的下单记录并归还redis库存</li>
+ * </ul>
+ * 每次只按id游标处理一批未结束的秒杀券，多个节点通过分布式锁保证同一时间只有一个节点对账。
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class StockReconciler {
+
+    private static final DefaultRedisScript<Long> RECONCILE_SCRIPT;
+    private static final DefaultRedisScript<Long> REPAIR_SCRIPT;
+
+    static {
+        RECONCILE_SCRIPT = new DefaultRedisScript<>();
+        RECONCILE_SCRIPT.setLocation(new ClassPathResource("stock_reconcile.lua"));
+        RECONCILE_SCRIPT.setResultType(Long.class);
+        REPAIR_SCRIPT = new DefaultRedisScript<>();
+        REPAIR_SCRIPT.setLocation(new ClassPathResource("stock_user_repair.lua"));
+        REPAIR_SCRIPT.setResultType(Long.class);
+    }
+
+    private final SeckillVoucherMapper seckillVoucherMapper;
+
+    private final IVoucherOrderService voucherOrderService;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final OrderProperties orderProperties;
+
+    private final SegmentedStock segmentedStock;
+
+    private final SoldOutRegistry soldOutRegistry;
+
+    private final MeterRegistry meterRegistry;
+
+    private final RedisLockFactory redisLockFactory;
+
+    private final OrderStatusStore orderStatusStore;
+
+    /**
+     * 优惠券id -> 上一轮观察到的未落库订单数
+     */
+    private final Map<Long, Long> lastUnpersisted = new ConcurrentHashMap<>();
+
+    /**
+     * 优惠券id -> 上一轮观察到的总量偏差，分段库存的各分段不能原子读取，连续两轮一致才修复
+     */
+    private final Map<Long, Long> lastTotalDrift = new ConcurrentHashMap<>();
+
+    @Scheduled(fixedDelayString = "${hmdp.order.reconcile.interval-millis:10000}",
+            initialDelayString = "${hmdp.order.reconcile.interval-millis:10000}")
+    public void reconcile() {
+        if (!orderProperties.getReconcile().isEnabled()) {
+            return;
+        }
+        ILock lock = redisLockFactory.getLock("seckill:reconcile");
+        if (!lock.tryLock(60)) {
+            // 其他节点正在对账
+            return;
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            reconcileChunk();
+        } catch (RuntimeException e) {
+            log.error("库存对账失败", e);
+        } finally {
+            lock.unlock();
+            sample.stop(meterRegistry.timer("seckill.reconcile.run"));
+        }
+    }
+
+    private void reconcileChunk() {
+        OrderProperties.Reconcile config = orderProperties.getReconcile();
+        // 1. 从上次的位置读取一批秒杀券，数据库的库存和订单数在同一条SQL中读取
+        String cursor = redisTemplate.opsForValue().get(SECKILL_RECONCILE_CURSOR_KEY);
+        long lastId = cursor == null ? 0 : Long.parseLong(cursor);
+        List<VoucherStockDTO> chunk = seckillVoucherMapper.queryStockSnapshot(
+                lastId, LocalDateTime.now(), config.getChunkSize());
+        // 1.1 到达末尾，下次从头开始
+        long nextId = chunk.size() < config.getChunkSize() ? 0 : chunk.get(chunk.size() - 1).getVoucherId();
+        redisTemplate.opsForValue().set(SECKILL_RECONCILE_CURSOR_KEY, String.valueOf(nextId));
+        if (chunk.isEmpty()) {
+            return;
+        }
+        // 2. 一次pipeline读取这批秒杀券在redis中的库存和下单人数
+        int segments = segments();
+        List<Object> values = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (VoucherStockDTO voucher : chunk) {
+                for (int i = 0; i < segments; i++) {
+                    conn.get(stockKey(voucher.getVoucherId(), i));
+                    conn.sCard(orderKey(voucher.getVoucherId(), i));
+                }
+            }
+            return null;
+        });
+        // 3. 逐个比较并修复
+        int index = 0;
+        for (VoucherStockDTO voucher : chunk) {
+            long stock = 0;
+            long sold = 0;
+            for (int i = 0; i < segments; i++) {
+                Object value = values.get(index++);
+                stock += value == null ? 0 : Long.parseLong(value.toString());
+                sold += (Long) values.get(index++);
+            }
+            check(voucher, stock, sold);
+        }
+        meterRegistry.counter("seckill.reconcile.vouchers").increment(chunk.size());
+    }
+
+    private void check(VoucherStockDTO voucher, long stock, long sold) {
+        Long voucherId = voucher.getVoucherId();
+        long dbTotal = voucher.getStock() + voucher.getOrders();
+        boolean restocked = false;
+        // 1. 总量不一致
+        long totalDrift = dbTotal - stock - sold;
+        if (totalDrift != 0) {
+            long applied = repairTotal(voucherId, dbTotal, totalDrift);
+            if (applied != 0) {
+                log.warn("修正redis库存总量，voucherId：{}，偏差 {}，修正 {}", voucherId, totalDrift, applied);
+                record("total", Math.abs(applied));
+                restocked = applied > 0;
+            }
+        } else {
+            lastTotalDrift.remove(voucherId);
+        }
+        // 2. 下单记录与订单数不一致
+        long unpersisted = sold - voucher.getOrders();
+        if (unpersisted < 0) {
+            // 2.1 数据库的订单一定先在redis中有下单记录，redis中缺少的可以直接补上
+            long added = repairUsers(voucherId, -unpersisted, true);
+            log.warn("补充redis下单记录，voucherId：{}，缺少 {}，补充 {}", voucherId, -unpersisted, added);
+            record("missing", added);
+            lastUnpersisted.remove(voucherId);
+        } else if (unpersisted > 0) {
+            // 2.2 未落库的订单可能还在消息队列中，连续两轮数量不变且消息全部处理完才认为已丢失
+            Long previous = lastUnpersisted.put(voucherId, unpersisted);
+            if (previous != null && previous == unpersisted && streamsDrained(voucherId)) {
+                long released = repairUsers(voucherId, unpersisted, false);
+                log.warn("释放未落库的下单记录，voucherId：{}，未落库 {}，释放 {}", voucherId, unpersisted, released);
+                record("unpersisted", released);
+                lastUnpersisted.remove(voucherId);
+                restocked |= released > 0;
+            }
+        } else {
+            lastUnpersisted.remove(voucherId);
+        }
+        // 3. 库存增加后清除售罄标记
+        if (restocked) {
+            soldOutRegistry.clear(voucherId);
+        }
+    }
+
+    /**
+     * @return 实际修正的库存数量
+     */
+    private long repairTotal(Long voucherId, long dbTotal, long drift) {
+        if (!segmentedStock.isEnabled()) {
+            Long applied = redisTemplate.execute(RECONCILE_SCRIPT,
+                    List.of(stockKey(voucherId, 0), orderKey(voucherId, 0)), String.valueOf(dbTotal));
+            return applied == null ? 0 : applied;
+        }
+        Long previous = lastTotalDrift.put(voucherId, drift);
+        if (previous == null || previous != drift) {
+            return 0;
+        }
+        lastTotalDrift.remove(voucherId);
+        redisTemplate.opsForValue().increment(stockKey(voucherId, 0), drift);
+        return drift;
+    }
+
+    /**
+     * 修正最多 limit 个用户的下单记录
+     *
+     * @param add true：补上数据库中有订单、redis中没有记录的用户；false：释放redis中有记录、数据库中没有订单的用户
+     * @return 修正的用户数
+     */
+    private long repairUsers(Long voucherId, long limit, boolean add) {
+        int batch = orderProperties.getReconcile().getScanBatch();
+        long repaired = 0;
+        if (add) {
+            // 1. 按用户id游标读取数据库中的下单用户，找出redis中没有记录的
+            long lastUserId = 0;
+            while (repaired < limit) {
+                List<Long> userIds = voucherOrderService.lambdaQuery()
+                        .select(VoucherOrder::getUserId)
+                        .eq(VoucherOrder::getVoucherId, voucherId)
+                        .gt(VoucherOrder::getUserId, lastUserId)
+                        .orderByAsc(VoucherOrder::getUserId)
+                        .last("LIMIT " + batch)
+                        .list()
+                        .stream().map(VoucherOrder::getUserId).collect(Collectors.toList());
+                if (userIds.isEmpty()) {
+                    break;
+                }
+                lastUserId = userIds.get(userIds.size() - 1);
+                repaired += repairBatch(voucherId, userIds, true);
+            }
+            return repaired;
+        }
+        // 2. 扫描redis中的下单记录，找出数据库中没有订单的
+        for (int i = 0; i < segments() && repaired < limit; i++) {
+            ScanOptions options = ScanOptions.scanOptions().count(batch).build();
+            try (Cursor<String> cursor = redisTemplate.opsForSet().scan(orderKey(voucherId, i), options)) {
+                List<Long> userIds = new ArrayList<>(batch);
+                while (repaired < limit && cursor.hasNext()) {
+                    userIds.add(Long.valueOf(cursor.next()));
+                    if (userIds.size() >= batch || !cursor.hasNext()) {
+                        Set<Long> ordered = voucherOrderService.lambdaQuery()
+                                .select(VoucherOrder::getUserId)
+                                .eq(VoucherOrder::getVoucherId, voucherId)
+                                .in(VoucherOrder::getUserId, userIds)
+                                .list()
+                                .stream().map(VoucherOrder::getUserId).collect(Collectors.toSet());
+                        userIds.removeAll(ordered);
+                        userIds.removeAll(pendingUsers(voucherId, userIds));
+                        repaired += repairBatch(voucherId, userIds, false);
+                        userIds.clear();
+                    }
+                }
+            }
+        }
+        return repaired;
+    }
+
+    /**
+     * 订单消息可能所在的分区都没有pending消息，并且消费者组已读到末尾
+     */
+    private boolean streamsDrained(Long voucherId) {
+        OrderProperties.Stream config = orderProperties.getStream();
+        // 按用户分区时这张券的订单可能在任意分区
+        List<String> keys = config.getPartitions() > 1 && "voucher".equals(config.getRouteBy())
+                ? Collections.singletonList(orderProperties.streamKeyOf(0L, voucherId))
+                : orderProperties.streamKeys();
+        for (String key : keys) {
+            StreamInfo.XInfoStream stream = redisTemplate.opsForStream().info(key);
+            StreamInfo.XInfoGroup group = redisTemplate.opsForStream().groups(key).stream()
+                    .filter(g -> config.getGroup().equals(g.groupName()))
+                    .findFirst().orElse(null);
+            if (group == null || group.pendingCount() > 0 || hasLag(group, stream)) {
+                log.info("订单消息尚未处理完，暂不释放下单记录，voucherId：{}，stream：{}", voucherId, key);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * redis 7 的 XINFO GROUPS 返回 lag，之前的版本比较最后投递的id与最后写入的id
+     */
+    private static boolean hasLag(StreamInfo.XInfoGroup group, StreamInfo.XInfoStream stream) {
+        Object lag = group.getRaw().get("lag");
+        if (lag instanceof Number) {
+            return ((Number) lag).longValue() > 0;
+        }
+        RecordId delivered = RecordId.of(group.lastDeliveredId());
+        RecordId generated = RecordId.of(stream.lastGeneratedId());
+        if (delivered.getTimestamp() != generated.getTimestamp()) {
+            return delivered.getTimestamp() < generated.getTimestamp();
+        }
+        return delivered.getSequence() < generated.getSequence();
+    }
+
+    /**
+     * 订单状态仍是处理中的用户，订单可能还在死信中等待重新投递，不能释放
+     */
+    private Set<Long> pendingUsers(Long voucherId, List<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return Collections.emptySet();
+        }
+        List<Object> values = redisTemplate.opsForHash().multiGet(SECKILL_ORDER_ID_KEY + voucherId,
+                userIds.stream().map(String::valueOf).collect(Collectors.toList()));
+        Map<Long, Long> userOfOrder = new HashMap<>();
+        for (int i = 0; i < userIds.size(); i++) {
+            if (values.get(i) != null) {
+                userOfOrder.put(Long.valueOf(values.get(i).toString()), userIds.get(i));
+            }
+        }
+        Set<Long> pending = new HashSet<>();
+        orderStatusStore.get(new ArrayList<>(userOfOrder.keySet())).forEach((orderId, status) -> {
+            if (status == OrderStatus.PENDING) {
+                pending.add(userOfOrder.get(orderId));
+            }
+        });
+        if (!pending.isEmpty()) {
+            log.warn("订单仍在处理中，暂不释放下单记录，voucherId：{}，用户：{}", voucherId, pending);
+        }
+        return pending;
+    }
+
+    /**
+     * 一次pipeline修正一批用户，add时脚本只处理redis中没有记录的用户
+     */
+    private long repairBatch(Long voucherId, List<Long> userIds, boolean add) {
+        if (userIds.isEmpty()) {
+            return 0;
+        }
+        String script = REPAIR_SCRIPT.getScriptAsString();
+        String mode = add ? "add" : "release";
+        List<Object> results = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long userId : userIds) {
+                int segment = segments() > 1 ? (int) Math.floorMod(userId, (long) segments()) : 0;
+                conn.eval(script, ReturnType.INTEGER, 2,
+                        stockKey(voucherId, segment), orderKey(voucherId, segment), userId.toString(), mode);
+            }
+            return null;
+        });
+        if (!add) {
+            redisTemplate.opsForHash().delete(SECKILL_ORDER_ID_KEY + voucherId, userIds.stream().map(String::valueOf).toArray());
+        }
+        return results.stream().mapToLong(r -> (Long) r).sum();
+    }
+
+    private int segments() {
+        return segmentedStock.isEnabled() ? segmentedStock.segments() : 1;
+    }
+
+    private String stockKey(Long voucherId, int segment) {
+        return segmentedStock.isEnabled() ? SegmentedStock.stockKey(voucherId, segment) : SECKILL_STOCK_KEY + voucherId;
+    }
+
+    private String orderKey(Long voucherId, int segment) {
+        return segmentedStock.isEnabled() ? SegmentedStock.orderKey(voucherId, segment) : SECKILL_ORDER_KEY + voucherId;
+    }
+
+    private void record(String type, long repaired) {
+        meterRegistry.counter("seckill.reconcile.drift", "type", type).increment();
+        meterRegistry.counter("seckill.reconcile.repaired", "type", type).increment(repaired);
+    }
+}
@@ -0,0 +1,414 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.core.bean.BeanUtil;
+import cn.hutool.core.util.RandomUtil;
+import cn.hutool.core.util.StrUtil;
+import com.hmdp.config.OrderProperties;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.OrderStatus;
+import com.hmdp.utils.HierarchicalLockFactory;
+import com.hmdp.utils.ILock;
+import com.hmdp.utils.OrderStatusStore;
+import com.hmdp.utils.StreamRecovery;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.RedisSystemException;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.ORDER_STREAM_CONSUMERS_KEY;
+import static com.hmdp.utils.RedisConstants.ORDER_STREAM_DLQ_KEY;
+import static com.hmdp.utils.RedisConstants.ORDER_STREAM_LEASE_KEY;
+
+/**
+ * 秒杀订单消息消费者。
+ * 订单按用户或优惠券id分布在多个stream分区中，每个节点启动若干消费线程，
+ * 每个线程通过redis租约领取一部分分区，领取数量为 分区数 / 全部存活线程数，
+ * 节点增减时分区会重新分配，处理能力随线程数和节点数扩展。
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class VoucherOrderConsumer implements DisposableBean {
+
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT;
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+
+    static {
+        RELEASE_SCRIPT = new DefaultRedisScript<>();
+        RELEASE_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
+        RELEASE_SCRIPT.setResultType(Long.class);
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("lease_renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+    }
+
+    private final IVoucherOrderService voucherOrderService;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final HierarchicalLockFactory hierarchicalLockFactory;
+
+    private final OrderProperties orderProperties;
+
+    private final OrderStatusStore orderStatusStore;
+
+    private ExecutorService executor;
+
+    /**
+     * pending消息的恢复和死信
+     */
+    @Getter
+    private StreamRecovery recovery;
+
+    private volatile boolean running = true;
+
+    @PostConstruct
+    public void init() {
+        // 1. 创建消费者组，stream不存在时一并创建
+        String group = orderProperties.getStream().getGroup();
+        for (String key : orderProperties.streamKeys()) {
+            try {
+                redisTemplate.opsForStream().createGroup(key, ReadOffset.from("0"), group);
+            } catch (RedisSystemException e) {
+                // 消费者组已存在
+                if (!StrUtil.contains(e.getMessage(), "BUSYGROUP")) {
+                    throw e;
+                }
+            }
+        }
+        // 转入死信的订单不会再被自动处理，状态改为失败，长轮询的客户端立即得到结果
+        recovery = new StreamRecovery(redisTemplate, group, ORDER_STREAM_DLQ_KEY, orderProperties.getRecovery())
+                .onDeadLetter(record -> orderStatusStore.update(
+                        Long.parseLong(record.getValue().get("id").toString()), OrderStatus.FAILED));
+        // 2. 启动消费线程，每个线程有唯一的消费者名称
+        OrderProperties.Consumer config = orderProperties.getConsumer();
+        String instanceId = StrUtil.isNotBlank(config.getInstanceId()) ? config.getInstanceId() : defaultInstanceId();
+        int threads = Math.max(1, config.getThreads());
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(threads,
+                r -> new Thread(r, "order-consumer-" + threadIndex.incrementAndGet()));
+        for (int i = 0; i < threads; i++) {
+            executor.submit(new Worker(instanceId + "-" + i));
+        }
+        log.info("订单消费者 {} 启动 {} 个线程，分区数 {}", instanceId, threads, orderProperties.streamKeys().size());
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        running = false;
+        executor.shutdown();
+        if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+            executor.shutdownNow();
+            // 等待线程退出时释放租约，redis连接在本bean之后才关闭
+            if (!executor.awaitTermination(2, TimeUnit.SECONDS)) {
+                log.warn("订单消费线程未能及时退出，未释放的租约到期后由其他节点接管");
+            }
+        }
+    }
+
+    /**
+     * 主机名-进程号-随机数，同一台机器上的多个进程也不会重复
+     */
+    private static String defaultInstanceId() {
+        // RuntimeMXBean的名称为 进程号@主机名
+        String[] name = ManagementFactory.getRuntimeMXBean().getName().split("@", 2);
+        String host = name.length > 1 ? name[1] : "unknown";
+        return host + "-" + name[0] + "-" + RandomUtil.randomString(4);
+    }
+
+    private boolean isBatchMode() {
+        return "batch".equals(orderProperties.getConsumer().getMode());
+    }
+
+    private void handleVoucherOrder(VoucherOrder voucherOrder) {
+        boolean created = persist(voucherOrder, orderProperties.getConsumer().getPersist());
+        orderStatusStore.update(voucherOrder.getId(), created ? OrderStatus.CREATED : OrderStatus.FAILED);
+    }
+
+    /**
+     * 按指定方式写入一条订单
+     *
+     * @param persist idempotent 或 lock
+     * @return 订单是否已写入数据库
+     */
+    public boolean persist(VoucherOrder voucherOrder, String persist) {
+        if (!"lock".equals(persist)) {
+            return voucherOrderService.createVoucherOrderIdempotent(voucherOrder);
+        }
+        Long userId = voucherOrder.getUserId();
+        ILock lock = hierarchicalLockFactory.getLock("order:" + userId);
+        if (!tryLockNoWait(lock)) {
+            //锁定失败，返回异常
+            log.error("不允许重复下单");
+            return false;
+        }
+        try {
+            return voucherOrderService.createVoucherOrder(voucherOrder);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static boolean tryLockNoWait(ILock lock) {
+        try {
+            return lock.lock(0, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 一个消费线程，只读取自己持有租约的分区
+     */
+    private class Worker implements Runnable {
+
+        private final String consumerName;
+
+        /**
+         * 当前持有的分区，只由本线程访问
+         */
+        private final Set<String> owned = new LinkedHashSet<>();
+
+        private long nextLeaseCheck;
+
+        private long nextRecovery;
+
+        Worker(String consumerName) {
+            this.consumerName = consumerName;
+        }
+
+        @Override
+        public void run() {
+            try {
+                consume();
+            } finally {
+                // 退出时由本线程主动释放租约，其他节点无需等待租约过期即可接管
+                releaseAll();
+            }
+        }
+
+        private void consume() {
+            while (running && !Thread.currentThread().isInterrupted()) {
+                try {
+                    // 1. 定期续约并重新平衡分区
+                    if (System.currentTimeMillis() >= nextLeaseCheck) {
+                        rebalance();
+                    }
+                    if (owned.isEmpty()) {
+                        // 1.1 没有分到分区，等待下次平衡
+                        Thread.sleep(1000);
+                        continue;
+                    }
+                    // 1.2 定期恢复所持分区中的pending消息，包括已宕机消费者留下的
+                    if (System.currentTimeMillis() >= nextRecovery) {
+                        nextRecovery = System.currentTimeMillis() + orderProperties.getRecovery().getIntervalMillis();
+                        for (String key : owned) {
+                            recovery.recover(key, consumerName, this::handleSingle);
+                        }
+                    }
+                    // 2. 读取并处理订单消息
+                    if (isBatchMode()) {
+                        handleBatchOrSingle(readBatch());
+                        continue;
+                    }
+                    // XREAD GROUP g1 consumer COUNT 1 BLOCK 2000 STREAMS stream.orders.x ... > ...
+                    List<MapRecord<String, Object, Object>> list = read(1, Duration.ofSeconds(2), ReadOffset.lastConsumed());
+                    if (list.isEmpty()) {
+                        continue;
+                    }
+                    handleSingle(list.get(0));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (Exception e) {
+                    // 处理失败的消息留在pending列表中，由恢复流程按退避时间重试，不阻塞新订单
+                    log.error("处理订单异常", e);
+                    try {
+                        Thread.sleep(100);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+        }
+
+        /**
+         * 续约已持有的分区，按存活线程数计算应持有的数量，多了释放，少了领取空闲分区
+         */
+        private void rebalance() {
+            OrderProperties.Consumer config = orderProperties.getConsumer();
+            long leaseMillis = TimeUnit.SECONDS.toMillis(config.getLeaseSeconds());
+            long now = System.currentTimeMillis();
+            nextLeaseCheck = now + leaseMillis / 3;
+            // 1. 心跳，清理超过租约时长没有心跳的线程
+            redisTemplate.opsForZSet().add(ORDER_STREAM_CONSUMERS_KEY, consumerName, now);
+            redisTemplate.opsForZSet().removeRangeByScore(ORDER_STREAM_CONSUMERS_KEY, 0, now - leaseMillis);
+            Long alive = redisTemplate.opsForZSet().zCard(ORDER_STREAM_CONSUMERS_KEY);
+            List<String> keys = orderProperties.streamKeys();
+            int share = (int) Math.ceil((double) keys.size() / Math.max(1, alive == null ? 1 : alive));
+            // 2. 续约，续约失败说明租约已被别人拿走
+            owned.removeIf(key -> {
+                Long renewed = redisTemplate.execute(RENEW_SCRIPT,
+                        Collections.singletonList(ORDER_STREAM_LEASE_KEY + key),
+                        consumerName, String.valueOf(leaseMillis));
+                return renewed == null || renewed == 0;
+            });
+            // 3. 超出应持有的数量，释放多余的分区
+            Iterator<String> iterator = owned.iterator();
+            while (owned.size() > share && iterator.hasNext()) {
+                String key = iterator.next();
+                release(key);
+                iterator.remove();
+            }
+            // 4. 不足时领取空闲分区，从随机位置开始，避免所有线程抢同一个分区
+            int start = RandomUtil.randomInt(keys.size());
+            for (int i = 0; i < keys.size() && owned.size() < share; i++) {
+                String key = keys.get((start + i) % keys.size());
+                if (owned.contains(key)) {
+                    continue;
+                }
+                Boolean claimed = redisTemplate.opsForValue().setIfAbsent(
+                        ORDER_STREAM_LEASE_KEY + key, consumerName, leaseMillis, TimeUnit.MILLISECONDS);
+                if (Boolean.TRUE.equals(claimed)) {
+                    owned.add(key);
+                    log.info("消费者 {} 领取分区 {}", consumerName, key);
+                }
+            }
+        }
+
+        private void release(String key) {
+            redisTemplate.execute(RELEASE_SCRIPT,
+                    Collections.singletonList(ORDER_STREAM_LEASE_KEY + key), consumerName);
+        }
+
+        /**
+         * 释放全部租约并移除心跳，线程被中断时先清除中断标记，否则redis命令会直接失败
+         */
+        private void releaseAll() {
+            boolean interrupted = Thread.interrupted();
+            try {
+                for (String key : owned) {
+                    release(key);
+                }
+                owned.clear();
+                redisTemplate.opsForZSet().remove(ORDER_STREAM_CONSUMERS_KEY, consumerName);
+            } catch (Exception e) {
+                log.warn("消费者 {} 释放租约失败，租约到期后由其他节点接管", consumerName, e);
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private List<MapRecord<String, Object, Object>> read(int count, Duration block, ReadOffset offset) {
+            StreamReadOptions options = StreamReadOptions.empty().count(count);
+            if (block != null) {
+                options = options.block(block);
+            }
+            StreamOffset<String>[] offsets = owned.stream()
+                    .map(key -> StreamOffset.create(key, offset))
+                    .toArray(StreamOffset[]::new);
+            List<MapRecord<String, Object, Object>> list = redisTemplate.opsForStream().read(
+                    Consumer.from(orderProperties.getStream().getGroup(), consumerName), options, offsets);
+            return list == null ? Collections.emptyList() : list;
+        }
+
+        private void handleSingle(MapRecord<String, Object, Object> record) {
+            VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true);
+            handleVoucherOrder(voucherOrder);
+            redisTemplate.opsForStream().acknowledge(
+                    record.getStream(), orderProperties.getStream().getGroup(), record.getId());
+        }
+
+        /**
+         * 整批失败时逐条处理，仍失败的消息留在pending列表中，不影响同批的其他消息
+         */
+        private void handleBatchOrSingle(List<MapRecord<String, Object, Object>> records) {
+            try {
+                handleBatch(records);
+            } catch (Exception e) {
+                log.error("批量处理订单异常，改为逐条处理", e);
+                for (MapRecord<String, Object, Object> record : records) {
+                    try {
+                        handleSingle(record);
+                    } catch (Exception ex) {
+                        log.error("处理订单消息失败，id：{}", record.getId(), ex);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 读取一批消息：阻塞等到第一条后，在linger时间内继续读取，直到凑满batchSize
+         */
+        private List<MapRecord<String, Object, Object>> readBatch() {
+            OrderProperties.Consumer config = orderProperties.getConsumer();
+            List<MapRecord<String, Object, Object>> batch = new ArrayList<>(config.getBatchSize());
+            Duration block = Duration.ofSeconds(2);
+            long deadline = Long.MAX_VALUE;
+            while (batch.size() < config.getBatchSize()) {
+                batch.addAll(read(config.getBatchSize() - batch.size(), block, ReadOffset.lastConsumed()));
+                if (batch.isEmpty()) {
+                    // 一条都没有，交给外层循环继续等待
+                    break;
+                }
+                if (deadline == Long.MAX_VALUE) {
+                    deadline = System.currentTimeMillis() + config.getLingerMillis();
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                block = Duration.ofMillis(remaining);
+            }
+            return batch;
+        }
+
+        /**
+         * 批量下单，成功后每个分区一次ACK
+         */
+        private void handleBatch(List<MapRecord<String, Object, Object>> records) {
+            if (records.isEmpty()) {
+                return;
+            }
+            List<VoucherOrder> orders = new ArrayList<>(records.size());
+            for (MapRecord<String, Object, Object> record : records) {
+                orders.add(BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true));
+            }
+            Set<Long> created = voucherOrderService.createVoucherOrders(orders);
+            Map<Long, OrderStatus> statuses = new LinkedHashMap<>(orders.size());
+            for (VoucherOrder order : orders) {
+                statuses.put(order.getId(), created.contains(order.getId()) ? OrderStatus.CREATED : OrderStatus.FAILED);
+            }
+            orderStatusStore.update(statuses);
+            Map<String, List<RecordId>> idsByStream = records.stream().collect(Collectors.groupingBy(
+                    MapRecord::getStream, Collectors.mapping(MapRecord::getId, Collectors.toList())));
+            String group = orderProperties.getStream().getGroup();
+            idsByStream.forEach((stream, ids) ->
+                    redisTemplate.opsForStream().acknowledge(stream, group, ids.toArray(new RecordId[0])));
+            log.debug("批量处理订单消息 {} 条，创建订单 {} 条", records.size(), created.size());
+        }
+    }
+}
@@ -1,37 +1,32 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.config.OrderProperties;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.VoucherOrder;
 import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.utils.HotKeyDetector;
+import com.hmdp.utils.OrderStatusStore;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SegmentedStock;
+import com.hmdp.utils.SoldOutRegistry;
 import com.hmdp.utils.UserHolder;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
-import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
 import org.springframework.core.io.ClassPathResource;
-import org.springframework.data.redis.connection.stream.*;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.interceptor.TransactionAspectSupport;
 
-import javax.annotation.PostConstruct;
-import java.time.Duration;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.*;
+import java.util.stream.Collectors;
 
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
 
 /**
  * <p>
@@ -52,100 +47,17 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 
     private final StringRedisTemplate redisTemplate;
 
-    private final RedissonClient redissonClient;
+    private final HotKeyDetector hotKeyDetector;
 
-    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    private final SoldOutRegistry soldOutRegistry;
 
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+    private final SegmentedStock segmentedStock;
 
-    private IVoucherOrderService proxy;
+    private final OrderStatusStore orderStatusStore;
 
-    @PostConstruct
-    public void init() {
-        SECKILL_ORDER_EXECUTOR.submit(new voucherOrderHandler());
-    }
+    private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
 
-    private class voucherOrderHandler implements Runnable {
-        String queueName = "stream.orders";
-
-        @Override
-        public void run() {
-            while (true) {
-                try {
-                    // 1. 获取消息队列中的订单信息 XREAD GROUP g1 c1 COUNT 1 BLOCK 2000 STREAMS stream.orders >
-                    List<MapRecord<String, Object, Object>> list = redisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                            StreamOffset.create(queueName, ReadOffset.lastConsumed())
-                    );
-                    // 2. 判断消息获取是否成功
-                    if (list.isEmpty() || list == null) {
-                        // 2.1 如果获取失败，说明没有消息， 继续下一次循环
-                        continue;
-                    }
-                    // 3. 解析消息中的订单信息
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-                    // 4. 如果获取成功，可以下单
-                    handleVoucherOrder(voucherOrder);
-                    // 5. ACK确认消息消费成功 XACK stream.orders g1 id
-                    redisTemplate.opsForStream().acknowledge(queueName, "g1", record.getId());
-                } catch (Exception e) {
-                    log.error("处理订单异常", e);
-                    handlePendingList();
-                }
-            }
-        }
-
-        private void handlePendingList() {
-            while (true) {
-                try {
-                    // 1. 获取pending列表中的订单信息 XREAD GROUP g1 c1 COUNT 1 STREAMS stream.orders 0
-                    List<MapRecord<String, Object, Object>> list = redisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1),
-                            StreamOffset.create(queueName, ReadOffset.from("0"))
-                    );
-                    // 2. 判断消息获取是否成功
-                    if (list.isEmpty() || list == null) {
-                        // 2.1 如果获取失败，说明pending列表没有异常消息， 继续下一次循环
-                        break;
-                    }
-                    // 3. 解析消息中的订单信息
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> values = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(values, new VoucherOrder(), true);
-                    // 4. 如果获取成功，可以下单
-                    handleVoucherOrder(voucherOrder);
-                    // 5. ACK确认消息消费成功 XACK stream.orders g1 id
-                    redisTemplate.opsForStream().acknowledge(queueName, "g1", record.getId());
-                } catch (Exception e) {
-                    log.error("处理pending列表订单异常", e);
-                    try {
-                        Thread.sleep(20);
-                    } catch (InterruptedException ex) {
-                        ex.printStackTrace();
-                    }
-                }
-            }
-        }
-    }
-
-    private void handleVoucherOrder(VoucherOrder voucherOrder) {
-        Long userId = voucherOrder.getUserId();
-        RLock lock = redissonClient.getLock("lock:order:" + userId);
-        if (!lock.tryLock()) {
-            //锁定失败，返回异常
-            log.error("不允许重复下单");
-            return;
-        }
-        try {
-            proxy.createVoucherOrder(voucherOrder);
-        } finally {
-            lock.unlock();
-        }
-    }
+    private final OrderProperties orderProperties;
 
     static {
         SECKILL_SCRIPT = new DefaultRedisScript<>();
@@ -158,22 +70,41 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     @Transactional
     public Result seckillVoucher(Long voucherId) {
         Long userId = UserHolder.getUser().getId();
+        // 0. 已售罄直接返回，不生成订单id也不执行脚本
+        if (soldOutRegistry.isSoldOut(voucherId)) {
+            return Result.fail("库存不足");
+        }
+        // 0.1 统计库存key的访问频率，库存在lua中原子扣减，不能使用本地副本
+        hotKeyDetector.record(SECKILL_STOCK_KEY + voucherId);
         long orderId = redisIdWorker.nextId("order");
-        // 1. 执行lua脚本
-        Long result = redisTemplate.execute(
-                SECKILL_SCRIPT,
-                Collections.emptyList(),
-                String.valueOf(voucherId),
-                String.valueOf(userId),
-                String.valueOf(orderId)
-        );
-        int r = Math.toIntExact(result);
+        int r;
+        if (segmentedStock.isEnabled()) {
+            // 1. 分段库存模式，库存拆在多个key上
+            r = segmentedStock.seckill(voucherId, userId, orderId);
+        } else {
+            // 1. 执行lua脚本
+            Long result = redisTemplate.execute(
+                    SECKILL_SCRIPT,
+                    Collections.emptyList(),
+                    String.valueOf(voucherId),
+                    String.valueOf(userId),
+                    String.valueOf(orderId),
+                    String.valueOf(orderProperties.getStream().getPartitions()),
+                    orderProperties.getStream().getRouteBy(),
+                    OrderStatusStore.bucketKey(orderId),
+                    OrderStatusStore.field(orderId),
+                    String.valueOf(orderStatusStore.ttlSeconds())
+            );
+            r = Math.toIntExact(result);
+        }
         // 2. 判断结果为零
         if (r != 0) {
-            // 2.1 不为零，代表没有购买资格
+            // 2.1 不为零，代表没有购买资格，库存不足时标记售罄
+            if (r == 1) {
+                soldOutRegistry.markSoldOut(voucherId);
+            }
             return Result.fail(r == 1 ? "库存不足" : "不能重复下单");
         }
-        proxy = (IVoucherOrderService) AopContext.currentProxy();
         // 3.返回订单id
         return Result.ok(orderId);
     }
@@ -181,17 +112,23 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 
     @Override
     @Transactional
-    public void createVoucherOrder(VoucherOrder voucherOrder) {
+    public boolean createVoucherOrder(VoucherOrder voucherOrder) {
         // 7. 一人一券，判断是否已参与过
         Long voucherId = voucherOrder.getVoucherId();
         Long userId = voucherOrder.getUserId();
-        int count = Math.toIntExact(this.lambdaQuery()
+        // 用list而不是one：mybatis-plus 3.5.3 的链式one()查不到数据时会抛出异常
+        List<VoucherOrder> existing = this.lambdaQuery()
+                .select(VoucherOrder::getId)
                 .eq(VoucherOrder::getUserId, userId)
                 .eq(VoucherOrder::getVoucherId, voucherId)
-                .count());
-        if (count > 0) {
+                .list();
+        if (!existing.isEmpty()) {
+            // 同一条消息重复投递时订单已经创建
+            if (existing.get(0).getId().equals(voucherOrder.getId())) {
+                return true;
+            }
             log.error("不能重复下单");
-            return;
+            return false;
         }
         // 6. 库存充足，扣减库存
         boolean success = seckillVoucherService.lambdaUpdate()
@@ -201,9 +138,112 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                 .update();
         if (!success) {
             log.error("扣减库存失败");
-            return;
+            return false;
         }
         // 7. 保存订单信息
-        this.save(voucherOrder);
+        return this.save(voucherOrder);
+    }
+
+    @Override
+    @Transactional
+    public boolean createVoucherOrderIdempotent(VoucherOrder voucherOrder) {
+        // 1. 先插入订单，uk_voucher_user 保证一人一单，先插入可以缩短库存行锁的持有时间
+        if (getBaseMapper().insertIgnore(voucherOrder) == 0) {
+            // 1.1 已存在，同一条消息重复投递时订单id相同
+            boolean redelivered = this.lambdaQuery().eq(VoucherOrder::getId, voucherOrder.getId()).exists();
+            if (!redelivered) {
+                log.error("不能重复下单，userId：{}，voucherId：{}", voucherOrder.getUserId(), voucherOrder.getVoucherId());
+            }
+            return redelivered;
+        }
+        // 2. 扣减库存，影响行数为0说明库存不足，回滚插入的订单
+        boolean success = seckillVoucherService.lambdaUpdate()
+                .setSql("stock = stock - 1")
+                .gt(SeckillVoucher::getStock, 0)
+                .eq(SeckillVoucher::getVoucherId, voucherOrder.getVoucherId())
+                .update();
+        if (!success) {
+            log.error("扣减库存失败，voucherId：{}", voucherOrder.getVoucherId());
+            TransactionAspectSupport.currentTransactionStatus().setRollbackOnly();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    @Transactional
+    public Set<Long> createVoucherOrders(List<VoucherOrder> voucherOrders) {
+        // 1. 同一批内按用户+优惠券去重，重复投递的消息只保留一条
+        Map<String, VoucherOrder> unique = new LinkedHashMap<>();
+        for (VoucherOrder order : voucherOrders) {
+            unique.putIfAbsent(order.getUserId() + ":" + order.getVoucherId(), order);
+        }
+        // 2. 去掉数据库中已存在的订单，一次查询代替逐条count
+        Set<Long> created = new HashSet<>();
+        Set<Long> userIds = new HashSet<>();
+        Set<Long> voucherIds = new HashSet<>();
+        unique.values().forEach(o -> {
+            userIds.add(o.getUserId());
+            voucherIds.add(o.getVoucherId());
+        });
+        this.lambdaQuery()
+                .select(VoucherOrder::getId, VoucherOrder::getUserId, VoucherOrder::getVoucherId)
+                .in(VoucherOrder::getUserId, userIds)
+                .in(VoucherOrder::getVoucherId, voucherIds)
+                .list()
+                .forEach(o -> {
+                    VoucherOrder removed = unique.remove(o.getUserId() + ":" + o.getVoucherId());
+                    if (removed == null) {
+                        return;
+                    }
+                    if (removed.getId().equals(o.getId())) {
+                        // 重复投递，订单已经创建
+                        created.add(o.getId());
+                    } else {
+                        log.error("不能重复下单，userId：{}，voucherId：{}", o.getUserId(), o.getVoucherId());
+                    }
+                });
+        // 3. 按优惠券汇总，每个优惠券只扣减一次库存
+        Map<Long, List<VoucherOrder>> byVoucher = unique.values().stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, LinkedHashMap::new, Collectors.toList()));
+        List<VoucherOrder> toInsert = new ArrayList<>(unique.size());
+        for (Map.Entry<Long, List<VoucherOrder>> entry : byVoucher.entrySet()) {
+            Long voucherId = entry.getKey();
+            List<VoucherOrder> orders = entry.getValue();
+            int count = decreaseStock(voucherId, orders.size());
+            if (count < orders.size()) {
+                log.error("扣减库存失败，voucherId：{}，需要 {}，实际 {}", voucherId, orders.size(), count);
+            }
+            toInsert.addAll(orders.subList(0, count));
+        }
+        // 4. 多行插入
+        if (!toInsert.isEmpty()) {
+            getBaseMapper().insertBatch(toInsert);
+        }
+        toInsert.forEach(o -> created.add(o.getId()));
+        return created;
+    }
+
+    /**
+     * 扣减库存，库存不足以扣减全部时按剩余库存扣减
+     *
+     * @return 实际扣减的数量
+     */
+    private int decreaseStock(Long voucherId, int count) {
+        boolean success = seckillVoucherService.lambdaUpdate()
+                .setSql("stock = stock - " + count)
+                .ge(SeckillVoucher::getStock, count)
+                .eq(SeckillVoucher::getVoucherId, voucherId)
+                .update();
+        if (success) {
+            return count;
+        }
+        // 正常情况下redis已经控制了库存，只有数据不一致时才会走到这里
+        SeckillVoucher voucher = seckillVoucherService.getById(voucherId);
+        int stock = voucher == null || voucher.getStock() == null ? 0 : voucher.getStock();
+        if (stock <= 0) {
+            return 0;
+        }
+        return decreaseStock(voucherId, Math.min(stock, count));
     }
 }
@@ -7,6 +7,8 @@ import com.hmdp.entity.Voucher;
 import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.SegmentedStock;
+import com.hmdp.utils.SoldOutRegistry;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -30,6 +32,8 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
 
     private final ISeckillVoucherService seckillVoucherService;
     private final StringRedisTemplate stringRedisTemplate;
+    private final SoldOutRegistry soldOutRegistry;
+    private final SegmentedStock segmentedStock;
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
@@ -51,7 +55,13 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
-        // 保存秒杀库存到redis中
-        stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(), String.valueOf(voucher.getStock()));
+        // 保存秒杀库存到redis中，分段模式下拆分到多个key
+        if (segmentedStock.isEnabled()) {
+            segmentedStock.init(voucher.getId(), voucher.getStock(), true);
+        } else {
+            stringRedisTemplate.opsForValue().set(SECKILL_STOCK_KEY + voucher.getId(), String.valueOf(voucher.getStock()));
+        }
+        // 库存已补充，清除各节点的售罄标记
+        soldOutRegistry.clear(voucher.getId());
     }
 }
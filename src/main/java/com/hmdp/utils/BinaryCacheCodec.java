@@ -0,0 +1,449 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按类结构生成的紧凑二进制序列化。
+ * <pre>
+ * 魔数(1) | 标志位(1) | 结构指纹(4) | [逻辑过期时间(8)] | [重建耗时(4)] | [压缩前长度(4)] | 数据
+ * 数据 = 空值位图 + 按字段顺序写入的非空字段值
+ * </pre>
+ * 命中时只需一次解码，不经过中间的JSON对象。
+ * 不支持的类型自动退回JSON，读到非二进制格式的数据时也交给JSON解码，方便平滑切换。
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class BinaryCacheCodec implements CacheCodec {
+
+    public static final String NAME = "binary";
+
+    private static final byte MAGIC = (byte) 0xCB;
+    private static final int FLAG_EXPIRE = 1;
+    private static final int FLAG_LZ4 = 1 << 1;
+    private static final int FLAG_REBUILD_COST = 1 << 2;
+
+    private static final LZ4Factory LZ4 = LZ4Factory.fastestInstance();
+
+    private final JsonCacheCodec jsonCodec;
+
+    private final CacheProperties cacheProperties;
+
+    private final ConcurrentHashMap<Class<?>, Schema> schemas = new ConcurrentHashMap<>();
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        Schema schema = value == null ? Schema.UNSUPPORTED : schemaOf(value.getClass());
+        if (schema == Schema.UNSUPPORTED) {
+            return jsonCodec.encode(value);
+        }
+        return write(schema, value, 0, 0, 0);
+    }
+
+    @Override
+    public byte[] encodeWithExpire(Object value, long expireAt, long rebuildMillis) {
+        Schema schema = value == null ? Schema.UNSUPPORTED : schemaOf(value.getClass());
+        if (schema == Schema.UNSUPPORTED) {
+            return jsonCodec.encodeWithExpire(value, expireAt, rebuildMillis);
+        }
+        int flags = rebuildMillis > 0 ? FLAG_EXPIRE | FLAG_REBUILD_COST : FLAG_EXPIRE;
+        return write(schema, value, flags, expireAt, rebuildMillis);
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        if (bytes.length == 0 || bytes[0] != MAGIC) {
+            return jsonCodec.decode(bytes, type);
+        }
+        Reader reader = new Reader(bytes, 1);
+        int flags = reader.readByte();
+        if ((flags & FLAG_EXPIRE) != 0) {
+            return null;
+        }
+        int fingerprint = reader.readInt();
+        return readBody(reader, flags, fingerprint, type);
+    }
+
+    @Override
+    public <R> CacheEntry<R> decodeWithExpire(byte[] bytes, Class<R> type) {
+        if (bytes.length == 0 || bytes[0] != MAGIC) {
+            return jsonCodec.decodeWithExpire(bytes, type);
+        }
+        Reader reader = new Reader(bytes, 1);
+        int flags = reader.readByte();
+        if ((flags & FLAG_EXPIRE) == 0) {
+            return null;
+        }
+        int fingerprint = reader.readInt();
+        // 逻辑过期时间是固定位置的头部，不需要解析数据就能读到
+        long expireAt = reader.readLong();
+        long rebuildMillis = (flags & FLAG_REBUILD_COST) != 0 ? reader.readInt() : 0;
+        R data = readBody(reader, flags, fingerprint, type);
+        return data == null ? null : new CacheEntry<>(data, expireAt, rebuildMillis);
+    }
+
+    private <R> R readBody(Reader reader, int flags, int fingerprint, Class<R> type) {
+        Schema schema = schemaOf(type);
+        if (schema == Schema.UNSUPPORTED || schema.fingerprint != fingerprint) {
+            // 类结构变了，当作未命中
+            log.warn("缓存数据结构与 {} 不一致，忽略", type.getName());
+            return null;
+        }
+        if ((flags & FLAG_LZ4) != 0) {
+            int rawLength = reader.readInt();
+            byte[] raw = new byte[rawLength];
+            LZ4.fastDecompressor().decompress(reader.buf, reader.pos, raw, 0, rawLength);
+            reader = new Reader(raw, 0);
+        }
+        return type.cast(schema.read(reader));
+    }
+
+    private byte[] write(Schema schema, Object value, int flags, long expireAt, long rebuildMillis) {
+        Writer writer = new Writer(256);
+        writer.writeByte(MAGIC);
+        writer.writeByte(flags);
+        writer.writeInt(schema.fingerprint);
+        if ((flags & FLAG_EXPIRE) != 0) {
+            writer.writeLong(expireAt);
+        }
+        if ((flags & FLAG_REBUILD_COST) != 0) {
+            writer.writeInt((int) Math.min(rebuildMillis, Integer.MAX_VALUE));
+        }
+        int headerLength = writer.size;
+        schema.write(value, writer);
+        int bodyLength = writer.size - headerLength;
+        // 数据较大时用lz4压缩，压缩后没有变小则不压缩
+        if (bodyLength >= cacheProperties.getCodec().getCompressThreshold()) {
+            LZ4Compressor compressor = LZ4.fastCompressor();
+            int maxLength = compressor.maxCompressedLength(bodyLength);
+            byte[] out = new byte[headerLength + 4 + maxLength];
+            System.arraycopy(writer.buf, 0, out, 0, headerLength);
+            out[1] = (byte) (flags | FLAG_LZ4);
+            Writer.putInt(out, headerLength, bodyLength);
+            int compressedLength = compressor.compress(
+                    writer.buf, headerLength, bodyLength, out, headerLength + 4, maxLength);
+            if (compressedLength + 4 < bodyLength) {
+                return Arrays.copyOf(out, headerLength + 4 + compressedLength);
+            }
+        }
+        return writer.toByteArray();
+    }
+
+    private Schema schemaOf(Class<?> type) {
+        return schemas.computeIfAbsent(type, Schema::create);
+    }
+
+    /**
+     * 一个类的字段布局
+     */
+    private static final class Schema {
+
+        static final Schema UNSUPPORTED = new Schema(null, new Field[0], new FieldType[0], 0);
+
+        final Constructor<?> constructor;
+        final Field[] fields;
+        final FieldType[] types;
+        final int fingerprint;
+
+        Schema(Constructor<?> constructor, Field[] fields, FieldType[] types, int fingerprint) {
+            this.constructor = constructor;
+            this.fields = fields;
+            this.types = types;
+            this.fingerprint = fingerprint;
+        }
+
+        static Schema create(Class<?> type) {
+            try {
+                Constructor<?> constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+                List<Field> fields = new ArrayList<>();
+                for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                    for (Field field : c.getDeclaredFields()) {
+                        int modifiers = field.getModifiers();
+                        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers)) {
+                            continue;
+                        }
+                        fields.add(field);
+                    }
+                }
+                // 按字段名排序，保证不同JVM上的字段顺序一致
+                fields.sort(Comparator.comparing(Field::getName));
+                FieldType[] types = new FieldType[fields.size()];
+                StringBuilder signature = new StringBuilder(type.getName());
+                for (int i = 0; i < types.length; i++) {
+                    Field field = fields.get(i);
+                    types[i] = FieldType.of(field.getType());
+                    if (types[i] == null) {
+                        log.info("{} 的字段 {} 类型不支持二进制序列化，改用JSON", type.getName(), field.getName());
+                        return UNSUPPORTED;
+                    }
+                    field.setAccessible(true);
+                    signature.append(';').append(field.getName()).append(':').append(types[i]);
+                }
+                return new Schema(constructor, fields.toArray(new Field[0]), types, signature.toString().hashCode());
+            } catch (NoSuchMethodException | RuntimeException e) {
+                log.info("{} 不支持二进制序列化，改用JSON：{}", type.getName(), e.getMessage());
+                return UNSUPPORTED;
+            }
+        }
+
+        void write(Object value, Writer writer) {
+            try {
+                Object[] values = new Object[fields.length];
+                // 1. 空值位图
+                int bitmapStart = writer.size;
+                writer.skip((fields.length + 7) >>> 3);
+                for (int i = 0; i < fields.length; i++) {
+                    values[i] = fields[i].get(value);
+                    if (values[i] == null) {
+                        writer.buf[bitmapStart + (i >>> 3)] |= (byte) (1 << (i & 7));
+                    }
+                }
+                // 2. 非空字段值
+                for (int i = 0; i < fields.length; i++) {
+                    if (values[i] != null) {
+                        types[i].write(writer, values[i]);
+                    }
+                }
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        Object read(Reader reader) {
+            try {
+                Object value = constructor.newInstance();
+                int bitmapStart = reader.pos;
+                reader.pos += (fields.length + 7) >>> 3;
+                for (int i = 0; i < fields.length; i++) {
+                    if ((reader.buf[bitmapStart + (i >>> 3)] & (1 << (i & 7))) != 0) {
+                        continue;
+                    }
+                    fields[i].set(value, types[i].read(reader));
+                }
+                return value;
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private enum FieldType {
+        LONG {
+            void write(Writer w, Object v) {
+                w.writeLong((Long) v);
+            }
+
+            Object read(Reader r) {
+                return r.readLong();
+            }
+        },
+        INT {
+            void write(Writer w, Object v) {
+                w.writeInt((Integer) v);
+            }
+
+            Object read(Reader r) {
+                return r.readInt();
+            }
+        },
+        DOUBLE {
+            void write(Writer w, Object v) {
+                w.writeLong(Double.doubleToRawLongBits((Double) v));
+            }
+
+            Object read(Reader r) {
+                return Double.longBitsToDouble(r.readLong());
+            }
+        },
+        BOOLEAN {
+            void write(Writer w, Object v) {
+                w.writeByte((Boolean) v ? 1 : 0);
+            }
+
+            Object read(Reader r) {
+                return r.readByte() != 0;
+            }
+        },
+        STRING {
+            void write(Writer w, Object v) {
+                byte[] bytes = ((String) v).getBytes(StandardCharsets.UTF_8);
+                w.writeVarInt(bytes.length);
+                w.writeBytes(bytes);
+            }
+
+            Object read(Reader r) {
+                int length = r.readVarInt();
+                String s = new String(r.buf, r.pos, length, StandardCharsets.UTF_8);
+                r.pos += length;
+                return s;
+            }
+        },
+        DATE_TIME {
+            void write(Writer w, Object v) {
+                LocalDateTime time = (LocalDateTime) v;
+                w.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+                w.writeInt(time.getNano());
+            }
+
+            Object read(Reader r) {
+                long seconds = r.readLong();
+                return LocalDateTime.ofEpochSecond(seconds, r.readInt(), ZoneOffset.UTC);
+            }
+        };
+
+        abstract void write(Writer w, Object v);
+
+        abstract Object read(Reader r);
+
+        static FieldType of(Class<?> c) {
+            if (c == Long.class || c == long.class) {
+                return LONG;
+            }
+            if (c == Integer.class || c == int.class) {
+                return INT;
+            }
+            if (c == Double.class || c == double.class) {
+                return DOUBLE;
+            }
+            if (c == Boolean.class || c == boolean.class) {
+                return BOOLEAN;
+            }
+            if (c == String.class) {
+                return STRING;
+            }
+            if (c == LocalDateTime.class) {
+                return DATE_TIME;
+            }
+            return null;
+        }
+    }
+
+    private static final class Writer {
+        byte[] buf;
+        int size;
+
+        Writer(int capacity) {
+            this.buf = new byte[capacity];
+        }
+
+        void ensure(int n) {
+            if (size + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, size + n));
+            }
+        }
+
+        void skip(int n) {
+            ensure(n);
+            size += n;
+        }
+
+        void writeByte(int v) {
+            ensure(1);
+            buf[size++] = (byte) v;
+        }
+
+        void writeInt(int v) {
+            ensure(4);
+            putInt(buf, size, v);
+            size += 4;
+        }
+
+        void writeLong(long v) {
+            ensure(8);
+            for (int i = 7; i >= 0; i--) {
+                buf[size++] = (byte) (v >>> (i << 3));
+            }
+        }
+
+        void writeVarInt(int v) {
+            while ((v & ~0x7F) != 0) {
+                writeByte((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            writeByte(v);
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, size);
+        }
+
+        static void putInt(byte[] buf, int offset, int v) {
+            buf[offset] = (byte) (v >>> 24);
+            buf[offset + 1] = (byte) (v >>> 16);
+            buf[offset + 2] = (byte) (v >>> 8);
+            buf[offset + 3] = (byte) v;
+        }
+    }
+
+    private static final class Reader {
+        final byte[] buf;
+        int pos;
+
+        Reader(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        int readByte() {
+            return buf[pos++];
+        }
+
+        int readInt() {
+            int v = (buf[pos] & 0xFF) << 24 | (buf[pos + 1] & 0xFF) << 16
+                    | (buf[pos + 2] & 0xFF) << 8 | (buf[pos + 3] & 0xFF);
+            pos += 4;
+            return v;
+        }
+
+        long readLong() {
+            long v = 0;
+            for (int i = 0; i < 8; i++) {
+                v = v << 8 | (buf[pos++] & 0xFF);
+            }
+            return v;
+        }
+
+        int readVarInt() {
+            int v = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = buf[pos++];
+                v |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return v;
+                }
+            }
+        }
+    }
+}
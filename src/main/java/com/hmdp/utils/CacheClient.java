@@ -1,17 +1,20 @@
 package com.hmdp.utils;
 
 import cn.hutool.core.util.BooleanUtil;
-import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONObject;
-import cn.hutool.json.JSONUtil;
+import com.hmdp.config.CacheProperties;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
 import org.springframework.stereotype.Component;
 
-import java.time.LocalDateTime;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
@@ -27,45 +30,272 @@ import static com.hmdp.utils.RedisConstants.*;
 public class CacheClient {
     private final StringRedisTemplate redisTemplate;
 
+    private final LocalCache localCache;
+
+    private final SingleFlight singleFlight;
+
+    private final CacheProperties cacheProperties;
+
+    /**
+     * key前缀 -> 布隆过滤器，查询前先判断id是否可能存在
+     */
+    private final Map<String, RedisBloomFilter> bloomFilters = new ConcurrentHashMap<>();
+
+    private final List<CacheCodec> codecs;
+
+    private final CacheRebuildScheduler rebuildScheduler;
+
+    private final HotKeyDetector hotKeyDetector;
+
+    private final CacheMetrics cacheMetrics;
+
+    /**
+     * 当前使用的序列化方式
+     */
+    private CacheCodec codec;
+
+    @PostConstruct
+    public void init() {
+        String type = cacheProperties.getCodec().getType();
+        codec = codecs.stream()
+                .filter(c -> c.name().equals(type))
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("不支持的缓存序列化方式：" + type));
+        log.info("缓存序列化方式：{}", codec.name());
+    }
+
     public void set(String key, Object value, Long time, TimeUnit timeUnit) {
-        redisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(value), time, timeUnit);
+        setRaw(key, codec.encode(value), time, timeUnit);
     }
 
     public void setWithLogicExpire(String key, Object value, Long time, TimeUnit timeUnit) {
-        RedisData redisData = new RedisData();
-        redisData.setData(value);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(timeUnit.toSeconds(time)));
-        redisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(redisData));
+        setWithLogicExpire(key, value, time, timeUnit, 0);
+    }
+
+    /**
+     * @param rebuildMillis 查询数据库的耗时，提前刷新策略据此决定提前多久刷新
+     */
+    public void setWithLogicExpire(String key, Object value, Long time, TimeUnit timeUnit, long rebuildMillis) {
+        long expireAt = System.currentTimeMillis() + timeUnit.toMillis(time);
+        setRaw(key, codec.encodeWithExpire(value, expireAt, rebuildMillis), null, null);
+    }
+
+    /**
+     * 批量写入缓存，按key前缀配置的策略写普通缓存或逻辑过期缓存，通过一次pipeline发送
+     *
+     * @param values id -> 数据
+     */
+    public void setBatch(String keyPrefix, Map<?, ?> values, Long time, TimeUnit timeUnit) {
+        writeBatch(keyPrefix, values, Collections.emptyList(), time, timeUnit);
+    }
+
+    /**
+     * 批量写入数据和空值
+     *
+     * @param nullIds 数据库中不存在的id，写入空值防止缓存穿透
+     */
+    private void writeBatch(String keyPrefix, Map<?, ?> values, Collection<?> nullIds,
+                            Long time, TimeUnit timeUnit) {
+        if (values.isEmpty() && nullIds.isEmpty()) {
+            return;
+        }
+        boolean logicExpire = strategyOf(keyPrefix) != CacheStrategy.PASS_THROUGH;
+        long expireAt = System.currentTimeMillis() + timeUnit.toMillis(time);
+        Expiration expiration = Expiration.from(time, timeUnit);
+        Expiration nullExpiration = Expiration.from(CACHE_NULL_TTL, TimeUnit.MINUTES);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Map.Entry<?, ?> entry : values.entrySet()) {
+                String key = keyPrefix + entry.getKey();
+                hotKeyDetector.evict(key);
+                byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+                if (logicExpire) {
+                    connection.stringCommands().set(rawKey, codec.encodeWithExpire(entry.getValue(), expireAt));
+                } else {
+                    connection.stringCommands().set(rawKey, codec.encode(entry.getValue()),
+                            expiration, RedisStringCommands.SetOption.upsert());
+                }
+            }
+            for (Object id : nullIds) {
+                String key = keyPrefix + id;
+                hotKeyDetector.evict(key);
+                connection.stringCommands().set(key.getBytes(StandardCharsets.UTF_8), new byte[0],
+                        nullExpiration, RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * key前缀配置的查询策略，未配置时为逻辑过期
+     */
+    public CacheStrategy strategyOf(String keyPrefix) {
+        return cacheProperties.getStrategies().getOrDefault(keyPrefix, CacheStrategy.LOGIC_EXPIRE);
+    }
+
+    /**
+     * 读取序列化后的数据，热点key读本地副本。访问已在查询本地缓存之前记录
+     */
+    private byte[] getRaw(String key) {
+        return hotKeyDetector.getOrLoad(key, () -> readRaw(key));
+    }
+
+    private byte[] readRaw(String key) {
+        return redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(key.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * 写入序列化后的数据，time为null时不设置过期时间
+     */
+    private void setRaw(String key, byte[] value, Long time, TimeUnit timeUnit) {
+        hotKeyDetector.evict(key);
+        redisTemplate.execute((RedisCallback<Object>) connection -> {
+            byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+            if (time == null) {
+                connection.stringCommands().set(rawKey, value);
+            } else {
+                connection.stringCommands().set(rawKey, value,
+                        Expiration.from(time, timeUnit), RedisStringCommands.SetOption.upsert());
+            }
+            return null;
+        });
+    }
+
+    public void registerBloomFilter(String keyPrefix, RedisBloomFilter bloomFilter) {
+        bloomFilters.put(keyPrefix, bloomFilter);
+    }
+
+    /**
+     * 布隆过滤器判断id一定不存在时返回false
+     */
+    private boolean mightExist(String keyPrefix, Object id) {
+        RedisBloomFilter bloomFilter = bloomFilters.get(keyPrefix);
+        if (bloomFilter == null || !(id instanceof Number)) {
+            return true;
+        }
+        return bloomFilter.mightContain(((Number) id).longValue());
+    }
+
+    /**
+     * 删除缓存，同时广播删除所有节点的本地缓存
+     */
+    public void invalidate(String key) {
+        redisTemplate.delete(key);
+        localCache.invalidate(key);
     }
 
     // 互斥锁解决方案
     public <R, ID> R queryWithPassThrough(
             String keyPrefix, ID id, Class<R> type,
             Function<ID, R> dbFallback, Long time, TimeUnit timeUnit) {
+        // 0. 布隆过滤器判断id不存在，直接返回
+        if (!mightExist(keyPrefix, id)) {
+            cacheMetrics.record(keyPrefix, CacheMetrics.Outcome.FILTERED);
+            return null;
+        }
         String key = keyPrefix + id;
+        // 0.1 记录访问，本地缓存命中的请求也计入热点探测
+        hotKeyDetector.record(key);
+        // 0.2 先查本地缓存
+        R local = localCache.get(key, type);
+        if (local != null) {
+            cacheMetrics.record(keyPrefix, CacheMetrics.Outcome.HIT);
+            return local;
+        }
+        long version = localCache.version();
         // 1. 从redis查询商铺缓存
-        String json = redisTemplate.opsForValue().get(key);
+        byte[] bytes = getRaw(key);
         // 2. 判断是否存在
-        if (StrUtil.isNotBlank(json)) {
-            // 3. 存在，直接返回缓存数据
-            return JSONUtil.toBean(json, type);
-        }
-        if (json != null) {
-            // 返回错误
+        if (bytes != null && bytes.length > 0) {
+            // 3. 存在，写入本地缓存并返回
+            R r = codec.decode(bytes, type);
+            if (r != null) {
+                cacheMetrics.record(keyPrefix, CacheMetrics.Outcome.HIT);
+                localCache.put(key, r, bytes.length, version);
+                return r;
+            }
+            // 3.1 数据无法识别，当作未命中重新加载
+        } else if (bytes != null) {
+            // 命中空值，返回错误
+            cacheMetrics.record(keyPrefix, CacheMetrics.Outcome.NULL_HIT);
             return null;
         }
-        // 4. 不存在，查询数据库
-        R r = dbFallback.apply(id);
-        if (r == null) {
-            // 存入null值，防止缓存穿透
-            redisTemplate.opsForValue().set(key, "", CACHE_NULL_TTL, TimeUnit.MINUTES);
-            // 5. 不存在，返回失败信息
-            return null;
+        // 4. 不存在，查询数据库。同一个key在本节点只有一个线程查询，其余线程等待它的结果
+        cacheMetrics.record(keyPrefix, CacheMetrics.Outcome.MISS);
+        Function<ID, R> timedFallback = cacheMetrics.timed(keyPrefix, dbFallback);
+        CacheProperties.SingleFlight sf = cacheProperties.getSingleFlight();
+        if (!sf.isEnabled()) {
+            return loadWithPassThrough(keyPrefix, id, type, timedFallback, time, timeUnit, version);
         }
-        // 6. 存在，写入redis
-        this.set(key, r, time, timeUnit);
-        // 7. 返回成功信息
-        return r;
+        return singleFlight.execute(key,
+                () -> loadWithPassThrough(keyPrefix, id, type, timedFallback, time, timeUnit, version),
+                sf.getTimeoutMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private <R, ID> R loadWithPassThrough(
+            String keyPrefix, ID id, Class<R> type,
+            Function<ID, R> dbFallback, Long time, TimeUnit timeUnit, long version) {
+        String key = keyPrefix + id;
+        // 1. 开启跨节点合并时，只有拿到加载锁的节点查询数据库
+        String lockKey = LOCK_LOAD_KEY + key;
+        boolean distributed = cacheProperties.getSingleFlight().isDistributed();
+        boolean locked = distributed && tryLock(lockKey);
+        if (distributed && !locked) {
+            // 1.1 其他节点正在加载，等待其写入redis
+            cacheMetrics.recordLockFailure(keyPrefix);
+            singleFlight.recordRemoteWaiter();
+            byte[] bytes = awaitRemoteLoad(key);
+            if (bytes != null) {
+                if (bytes.length == 0) {
+                    return null;
+                }
+                R r = codec.decode(bytes, type);
+                localCache.put(key, r, bytes.length, version);
+                return r;
+            }
+            // 1.2 等待超时，自行查询数据库
+        }
+        try {
+            // 2. 查询数据库
+            R r = dbFallback.apply(id);
+            if (r == null) {
+                // 存入null值，防止缓存穿透
+                setRaw(key, new byte[0], CACHE_NULL_TTL, TimeUnit.MINUTES);
+                // 3. 不存在，返回失败信息
+                return null;
+            }
+            // 4. 存在，写入redis和本地缓存
+            byte[] value = codec.encode(r);
+            setRaw(key, value, time, timeUnit);
+            localCache.put(key, r, value.length, version);
+            // 5. 返回成功信息
+            return r;
+        } finally {
+            if (locked) {
+                unlock(lockKey);
+            }
+        }
+    }
+
+    /**
+     * 轮询等待其他节点把数据写入redis，超时返回null
+     */
+    private byte[] awaitRemoteLoad(String key) {
+        CacheProperties.SingleFlight sf = cacheProperties.getSingleFlight();
+        long deadline = System.currentTimeMillis() + sf.getTimeoutMillis();
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                Thread.sleep(sf.getPollMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+            byte[] bytes = readRaw(key);
+            if (bytes != null) {
+                return bytes;
+            }
+        }
+        return null;
     }
 
     // 逻辑过期解决方案
@@ -79,51 +309,305 @@ public class CacheClient {
         redisTemplate.delete(key);
     }
 
-    private static final ExecutorService CACHE_REBUILD_EXECUTOR = Executors.newFixedThreadPool(10);
+    /**
+     * 按key前缀配置的策略查询缓存，未配置的前缀使用逻辑过期
+     */
+    public <R, ID> R query(
+            String keyPrefix, String lockKeyPrefix, ID id, Class<R> type,
+            Function<ID, R> dbFallback, Long time, TimeUnit timeUnit) {
+        switch (strategyOf(keyPrefix)) {
+            case PASS_THROUGH:
+                return queryWithPassThrough(keyPrefix, id, type, dbFallback, time, timeUnit);
+            case EARLY_REFRESH:
+                return queryWithEarlyRefresh(keyPrefix, lockKeyPrefix, id, type, dbFallback, time, timeUnit);
+            default:
+                return queryWithLogicExpire(keyPrefix, lockKeyPrefix, id, type, dbFallback, time, timeUnit);
+        }
+    }
+
+    /**
+     * 批量查询，一次MGET读取所有key，未命中的id一次性查询数据库并通过pipeline写回。
+     * 按key前缀配置的策略解析数据，逻辑过期的数据照常返回并异步重建。
+     *
+     * @param lockKeyPrefix 重建锁的前缀，与单个查询使用的相同，同一个key只有一个线程重建
+     * @param dbFallback 按id列表查询数据库，返回顺序不限
+     * @param idGetter   从数据中取出id，用于和输入的id对应
+     * @return 与ids顺序一致，不存在的位置为null
+     */
+    public <R, ID> List<R> queryBatch(
+            String keyPrefix, String lockKeyPrefix, List<ID> ids, Class<R> type,
+            Function<List<ID>, List<R>> dbFallback, Function<R, ID> idGetter,
+            Long time, TimeUnit timeUnit) {
+        int size = ids.size();
+        List<R> result = new ArrayList<>(Collections.nCopies(size, null));
+        if (size == 0) {
+            return result;
+        }
+        boolean logicExpire = strategyOf(keyPrefix) != CacheStrategy.PASS_THROUGH;
+        // 1. 布隆过滤器、记录访问和本地缓存，剩下的位置需要查redis
+        List<Integer> remote = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ID id = ids.get(i);
+            if (!mightExist(keyPrefix, id)) {
+                cacheMetrics.record(keyPrefix, CacheMetrics.Outcome.FILTERED);
+                continue;
+            }
+            hotKeyDetector.record(keyPrefix + id);
+            R local = getLocal(keyPrefix + id, type, logicExpire);
+            if (local != null) {
+                cacheMetrics.record(keyPrefix, CacheMetrics.Outcome.HIT);
+                result.set(i, local);
+                continue;
+            }
+            remote.add(i);
+        }
+        if (remote.isEmpty()) {
+            return result;
+        }
+        long version = localCache.version();
+        // 2. 一次MGET读取redis
+        byte[][] rawKeys = new byte[remote.size()][];
+        for (int j = 0; j < rawKeys.length; j++) {
+            rawKeys[j] = (keyPrefix + ids.get(remote.get(j))).getBytes(StandardCharsets.UTF_8);
+        }
+        List<byte[]> values = redisTemplate.execute((RedisCallback<List<byte[]>>) connection ->
+                connection.stringCommands().mGet(rawKeys));
+        // 3. 解析，记录未命中的位置
+        List<Integer> misses = new ArrayList<>();
+        for (int j = 0; j < rawKeys.length; j++) {
+            int i = remote.get(j);
+            byte[] bytes = values == null ? null : values.get(j);
+            if (bytes != null && bytes.length == 0) {
+                // 3.1 命中空值
+                cacheMetrics.record(keyPrefix, CacheMetrics.Outcome.NULL_HIT);
+                continue;
+            }
+            R r = null;
+            if (bytes != null && logicExpire) {
+                CacheEntry<R> entry = codec.decodeWithExpire(bytes, type);
+                if (entry != null) {
+                    r = entry.getData();
+                    localCache.put(keyPrefix + ids.get(i), entry, bytes.length, version);
+                    if (entry.isExpired()) {
+                        // 3.2 逻辑过期，返回旧数据并异步重建
+                        cacheMetrics.record(keyPrefix, CacheMetrics.Outcome.STALE);
+                        rebuildAsync(keyPrefix, lockKeyPrefix, ids.get(i),
+                                id -> firstOrNull(dbFallback.apply(List.of(id))), time, timeUnit);
+                        result.set(i, r);
+                        continue;
+                    }
+                }
+            } else if (bytes != null) {
+                r = codec.decode(bytes, type);
+                localCache.put(keyPrefix + ids.get(i), r, bytes.length, version);
+            }
+            if (r == null) {
+                misses.add(i);
+            } else {
+                cacheMetrics.record(keyPrefix, CacheMetrics.Outcome.HIT);
+                result.set(i, r);
+            }
+        }
+        if (misses.isEmpty()) {
+            return result;
+        }
+        // 4. 未命中的id一次查询数据库
+        List<ID> missIds = new ArrayList<>(misses.size());
+        for (int i : misses) {
+            cacheMetrics.record(keyPrefix, CacheMetrics.Outcome.MISS);
+            missIds.add(ids.get(i));
+        }
+        List<R> loaded = cacheMetrics.timed(keyPrefix, dbFallback).apply(missIds);
+        Map<ID, R> loadedMap = new HashMap<>(loaded.size() * 2);
+        for (R r : loaded) {
+            loadedMap.put(idGetter.apply(r), r);
+        }
+        List<ID> nullIds = new ArrayList<>();
+        for (int i : misses) {
+            ID id = ids.get(i);
+            R r = loadedMap.get(id);
+            if (r == null) {
+                nullIds.add(id);
+                continue;
+            }
+            result.set(i, r);
+        }
+        // 5. pipeline写回redis
+        writeBatch(keyPrefix, loadedMap, nullIds, time, timeUnit);
+        return result;
+    }
+
+    /**
+     * 读本地缓存，逻辑过期的数据只返回未过期的
+     */
+    private <R> R getLocal(String key, Class<R> type, boolean logicExpire) {
+        if (!logicExpire) {
+            return localCache.get(key, type);
+        }
+        CacheEntry<?> local = localCache.get(key, CacheEntry.class);
+        if (local != null && type.isInstance(local.getData()) && !local.isExpired()) {
+            return type.cast(local.getData());
+        }
+        return null;
+    }
+
+    private static <R> R firstOrNull(List<R> list) {
+        return list == null || list.isEmpty() ? null : list.get(0);
+    }
 
     public <R, ID> R queryWithLogicExpire(
             String keyPrefix,String lockKeyPrefix, ID id, Class<R> type,
             Function<ID, R> dbFallback, Long time, TimeUnit timeUnit) {
+        // 0. 布隆过滤器判断id不存在，直接返回
+        if (!mightExist(keyPrefix, id)) {
+            cacheMetrics.record(keyPrefix, CacheMetrics.Outcome.FILTERED);
+            return null;
+        }
         String key = keyPrefix + id;
+        // 0.1 记录访问
+        hotKeyDetector.record(key);
+        // 0.2 先查本地缓存，本地副本已逻辑过期时再查redis，可能已被其他节点重建
+        CacheEntry<?> local = localCache.get(key, CacheEntry.class);
+        if (local != null && type.isInstance(local.getData()) && !local.isExpired()) {
+            cacheMetrics.record(keyPrefix, CacheMetrics.Outcome.HIT);
+            return type.cast(local.getData());
+        }
+        long version = localCache.version();
         // 1. 从redis查询商铺缓存
-        String json = redisTemplate.opsForValue().get(key);
+        byte[] bytes = getRaw(key);
         // 2. 判断是否存在
-        if (StrUtil.isBlank(json)) {
-            // 3. 存在，直接返回缓存数据
+        if (bytes == null || bytes.length == 0) {
+            // 3. 不存在，直接返回
+            cacheMetrics.record(keyPrefix, bytes == null ? CacheMetrics.Outcome.MISS : CacheMetrics.Outcome.NULL_HIT);
             return null;
         }
-        // 4. 命中，需要把json反序列化为对象
-        RedisData redisData = JSONUtil.toBean(json, RedisData.class);
-        R r = JSONUtil.toBean((JSONObject) redisData.getData(), type);
-        LocalDateTime expireTime = redisData.getExpireTime();
-        // 5. 判断是否过期
-        if (expireTime.isAfter(LocalDateTime.now())) {
-            // 5.1 未过期，直接返回缓存数据
-            return r;
+        // 4. 命中，反序列化为对象
+        CacheEntry<R> entry = codec.decodeWithExpire(bytes, type);
+        R r = null;
+        if (entry != null) {
+            r = entry.getData();
+            // 4.1 以反序列化后的对象写入本地缓存
+            localCache.put(key, entry, bytes.length, version);
+            // 5. 判断是否过期
+            if (!entry.isExpired()) {
+                // 5.1 未过期，直接返回缓存数据
+                cacheMetrics.record(keyPrefix, CacheMetrics.Outcome.HIT);
+                return r;
+            }
         }
         // 5.2 已过期，需要缓存重建
+        cacheMetrics.record(keyPrefix, r == null ? CacheMetrics.Outcome.MISS : CacheMetrics.Outcome.STALE);
         // 6. 缓存重建
-        // 6.1 获取互斥锁
-        String lockKey = lockKeyPrefix + id;
-        boolean lock = tryLock(lockKey);
-        // 6.2 判断锁是否获取成功
-        if (lock) {
-            // 6.3 成功，开启独立线程，实现缓存重建
-            CACHE_REBUILD_EXECUTOR.submit(() -> {
-                try {
-                    // 查询数据库
-                    R r1 = dbFallback.apply(id);
-                    // 写入缓存
-                    this.setWithLogicExpire(key, r1, time, timeUnit);
-                } catch (RuntimeException e) {
-                    throw new RuntimeException(e);
-                } finally {
-                    // 释放锁
-                    unlock(lockKey);
-                }
-            });
+        rebuildAsync(keyPrefix, lockKeyPrefix, id, dbFallback, time, timeUnit);
+        // 7. 返回过期数据，数据无法识别时返回null，等待重建
+        return r;
+    }
+
+    /**
+     * 概率性提前刷新(XFetch)：距离逻辑过期越近、上次重建越慢，越可能提前触发重建。
+     * 热点key会在过期前被某一个请求刷新，不会在到期瞬间所有节点一起抢锁。
+     */
+    public <R, ID> R queryWithEarlyRefresh(
+            String keyPrefix, String lockKeyPrefix, ID id, Class<R> type,
+            Function<ID, R> dbFallback, Long time, TimeUnit timeUnit) {
+        // 0. 布隆过滤器判断id不存在，直接返回
+        if (!mightExist(keyPrefix, id)) {
+            cacheMetrics.record(keyPrefix, CacheMetrics.Outcome.FILTERED);
+            return null;
+        }
+        String key = keyPrefix + id;
+        // 0.1 记录访问
+        hotKeyDetector.record(key);
+        // 0.2 先查本地缓存，需要刷新时再查redis，可能已被其他节点刷新
+        CacheEntry<?> local = localCache.get(key, CacheEntry.class);
+        if (local != null && type.isInstance(local.getData()) && !shouldRefreshEarly(local)) {
+            cacheMetrics.record(keyPrefix, CacheMetrics.Outcome.HIT);
+            return type.cast(local.getData());
+        }
+        long version = localCache.version();
+        // 1. 从redis查询
+        byte[] bytes = getRaw(key);
+        if (bytes != null && bytes.length == 0) {
+            // 1.1 命中空值
+            cacheMetrics.record(keyPrefix, CacheMetrics.Outcome.NULL_HIT);
+            return null;
+        }
+        CacheEntry<R> entry = bytes == null ? null : codec.decodeWithExpire(bytes, type);
+        if (entry == null) {
+            // 2. 未命中或数据无法识别，同步加载，同一个key在本节点只有一个线程查询数据库
+            cacheMetrics.record(keyPrefix, CacheMetrics.Outcome.MISS);
+            Function<ID, R> timedFallback = cacheMetrics.timed(keyPrefix, dbFallback);
+            CacheProperties.SingleFlight sf = cacheProperties.getSingleFlight();
+            if (!sf.isEnabled()) {
+                return loadWithLogicExpire(key, id, timedFallback, time, timeUnit);
+            }
+            return singleFlight.execute(key,
+                    () -> loadWithLogicExpire(key, id, timedFallback, time, timeUnit),
+                    sf.getTimeoutMillis(), TimeUnit.MILLISECONDS);
         }
-        // 6.4 返回过期数据
+        // 3. 命中，写入本地缓存
+        localCache.put(key, entry, bytes.length, version);
+        cacheMetrics.record(keyPrefix, entry.isExpired() ? CacheMetrics.Outcome.STALE : CacheMetrics.Outcome.HIT);
+        // 4. 按概率判断是否提前刷新，拿到锁的请求异步重建，所有请求都返回当前数据
+        if (shouldRefreshEarly(entry)) {
+            rebuildAsync(keyPrefix, lockKeyPrefix, id, dbFallback, time, timeUnit);
+        }
+        return entry.getData();
+    }
+
+    /**
+     * XFetch：now - rebuildMillis * beta * ln(rand) >= expireAt 时刷新。
+     * ln(rand)为负数，越接近过期、重建越慢，满足条件的概率越大；已过期时一定刷新。
+     */
+    private boolean shouldRefreshEarly(CacheEntry<?> entry) {
+        CacheProperties.EarlyRefresh earlyRefresh = cacheProperties.getEarlyRefresh();
+        long rebuildMillis = entry.getRebuildMillis() > 0
+                ? entry.getRebuildMillis() : earlyRefresh.getDefaultRebuildMillis();
+        double gap = -rebuildMillis * earlyRefresh.getBeta()
+                * Math.log(1 - ThreadLocalRandom.current().nextDouble());
+        return System.currentTimeMillis() + gap >= entry.getExpireAt();
+    }
+
+    /**
+     * 同步查询数据库并写入逻辑过期缓存，数据不存在时缓存空值
+     */
+    private <R, ID> R loadWithLogicExpire(
+            String key, ID id, Function<ID, R> dbFallback, Long time, TimeUnit timeUnit) {
+        long begin = System.nanoTime();
+        R r = dbFallback.apply(id);
+        if (r == null) {
+            setRaw(key, new byte[0], CACHE_NULL_TTL, TimeUnit.MINUTES);
+            return null;
+        }
+        long rebuildMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        setWithLogicExpire(key, r, time, timeUnit, rebuildMillis);
         return r;
     }
+
+    /**
+     * 获取互斥锁成功时交给重建调度器异步重建，同时记录重建耗时
+     */
+    private <R, ID> void rebuildAsync(
+            String keyPrefix, String lockKeyPrefix, ID id,
+            Function<ID, R> dbFallback, Long time, TimeUnit timeUnit) {
+        String key = keyPrefix + id;
+        String lockKey = lockKeyPrefix + id;
+        // 0. 热点key的本地副本已过期，之后的请求直接读redis，拿到重建后的数据
+        hotKeyDetector.evict(key);
+        // 1. 本节点已在排队重建，只提高其优先级
+        if (rebuildScheduler.isPending(key)) {
+            rebuildScheduler.touch(key);
+            return;
+        }
+        // 2. 获取互斥锁
+        if (!tryLock(lockKey)) {
+            cacheMetrics.recordLockFailure(keyPrefix);
+            return;
+        }
+        // 3. 成功，提交重建任务，任务结束或被丢弃时释放锁
+        Function<ID, R> timedFallback = cacheMetrics.timed(keyPrefix, dbFallback);
+        rebuildScheduler.submit(key,
+                () -> loadWithLogicExpire(key, id, timedFallback, time, timeUnit),
+                () -> unlock(lockKey));
+    }
 }
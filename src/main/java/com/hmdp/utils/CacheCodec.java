@@ -0,0 +1,47 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存值的序列化方式，CacheClient 按 hmdp.cache.codec.type 选择实现
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+public interface CacheCodec {
+
+    /**
+     * 编解码器名称，对应配置 hmdp.cache.codec.type
+     */
+    String name();
+
+    /**
+     * 序列化普通缓存
+     */
+    byte[] encode(Object value);
+
+    /**
+     * 序列化带逻辑过期时间的缓存
+     *
+     * @param expireAt 逻辑过期时间，毫秒时间戳
+     */
+    default byte[] encodeWithExpire(Object value, long expireAt) {
+        return encodeWithExpire(value, expireAt, 0);
+    }
+
+    /**
+     * 序列化带逻辑过期时间的缓存，并记录本次重建耗时，供提前刷新策略使用
+     *
+     * @param expireAt      逻辑过期时间，毫秒时间戳
+     * @param rebuildMillis 查询数据库重建缓存的耗时，毫秒
+     */
+    byte[] encodeWithExpire(Object value, long expireAt, long rebuildMillis);
+
+    /**
+     * 反序列化普通缓存，数据无法识别时返回null
+     */
+    <R> R decode(byte[] bytes, Class<R> type);
+
+    /**
+     * 反序列化带逻辑过期时间的缓存，数据无法识别时返回null
+     */
+    <R> CacheEntry<R> decodeWithExpire(byte[] bytes, Class<R> type);
+}
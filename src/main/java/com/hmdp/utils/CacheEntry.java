@@ -0,0 +1,28 @@
+package com.hmdp.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 反序列化后的逻辑过期缓存
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Data
+@AllArgsConstructor
+public class CacheEntry<R> {
+    private R data;
+    /**
+     * 逻辑过期时间，毫秒时间戳
+     */
+    private long expireAt;
+    /**
+     * 上次重建缓存的耗时，毫秒，未记录时为0
+     */
+    private long rebuildMillis;
+
+    public boolean isExpired() {
+        return expireAt <= System.currentTimeMillis();
+    }
+}
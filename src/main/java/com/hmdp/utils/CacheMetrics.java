@@ -0,0 +1,108 @@
+package com.hmdp.utils;
+
+import io.micrometer.core.instrument.*;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * 缓存指标，按key前缀打标签，通过 /actuator/metrics 查看
+ * <ul>
+ *     <li>cache.requests：查询结果，result 为 hit、miss、null_hit、stale、filtered</li>
+ *     <li>cache.lock.failures：重建锁获取失败次数</li>
+ *     <li>cache.db.fallback：查询数据库的耗时分布</li>
+ * </ul>
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Component
+@RequiredArgsConstructor
+public class CacheMetrics {
+
+    public enum Outcome {
+        /**
+         * 命中未过期的数据
+         */
+        HIT,
+        /**
+         * 未命中，需要查询数据库
+         */
+        MISS,
+        /**
+         * 命中空值
+         */
+        NULL_HIT,
+        /**
+         * 返回了已逻辑过期的数据
+         */
+        STALE,
+        /**
+         * 被布隆过滤器拦截
+         */
+        FILTERED
+    }
+
+    private final MeterRegistry registry;
+
+    private final SingleFlight singleFlight;
+
+    private final CacheRebuildScheduler rebuildScheduler;
+
+    private final ConcurrentHashMap<String, Counter> requestCounters = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Counter> lockFailureCounters = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, Timer> fallbackTimers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        // 请求合并和重建调度器自己计数，这里只是注册到micrometer
+        FunctionCounter.builder("cache.singleflight.loads", singleFlight, SingleFlight::getLoaderExecutions)
+                .description("真正查询数据库的次数").register(registry);
+        FunctionCounter.builder("cache.singleflight.coalesced", singleFlight, SingleFlight::getCoalescedWaiters)
+                .description("被合并的请求数").register(registry);
+        FunctionCounter.builder("cache.singleflight.timeouts", singleFlight, SingleFlight::getWaitTimeouts)
+                .description("等待合并结果超时的次数").register(registry);
+        Gauge.builder("cache.rebuild.queue", rebuildScheduler, CacheRebuildScheduler::getQueueDepth)
+                .description("排队中的重建任务数").register(registry);
+        FunctionCounter.builder("cache.rebuild.failures", rebuildScheduler, CacheRebuildScheduler::getFailures)
+                .description("重建失败次数").register(registry);
+        FunctionCounter.builder("cache.rebuild.rejected", rebuildScheduler, CacheRebuildScheduler::getRejected)
+                .description("队列已满被丢弃的重建任务数").register(registry);
+        FunctionTimer.builder("cache.rebuild", rebuildScheduler,
+                        s -> s.getCompleted() + s.getFailures(),
+                        CacheRebuildScheduler::getTotalRebuildNanos, TimeUnit.NANOSECONDS)
+                .description("异步重建耗时").register(registry);
+    }
+
+    public void record(String keyPrefix, Outcome outcome) {
+        requestCounters.computeIfAbsent(keyPrefix + outcome, k -> Counter.builder("cache.requests")
+                .tag("prefix", keyPrefix)
+                .tag("result", outcome.name().toLowerCase(Locale.ROOT))
+                .register(registry)).increment();
+    }
+
+    public void recordLockFailure(String keyPrefix) {
+        lockFailureCounters.computeIfAbsent(keyPrefix, k -> Counter.builder("cache.lock.failures")
+                .tag("prefix", keyPrefix)
+                .register(registry)).increment();
+    }
+
+    /**
+     * 包装数据库查询，记录耗时
+     */
+    public <ID, R> Function<ID, R> timed(String keyPrefix, Function<ID, R> dbFallback) {
+        Timer timer = fallbackTimers.computeIfAbsent(keyPrefix, k -> Timer.builder("cache.db.fallback")
+                .tag("prefix", keyPrefix)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.99)
+                .register(registry));
+        return id -> timer.record(() -> dbFallback.apply(id));
+    }
+}
@@ -0,0 +1,226 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.CacheProperties;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 缓存重建调度器：队列有界，同一个key排队时只保留一个任务，访问越频繁越先重建。
+ * 应用关闭时等待正在执行的任务完成，未执行的任务释放各自的锁。
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+@Component
+public class CacheRebuildScheduler implements DisposableBean {
+
+    private final CacheProperties.Rebuild config;
+
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * key -> 排队中或执行中的任务
+     */
+    private final ConcurrentHashMap<String, RebuildTask> pending = new ConcurrentHashMap<>();
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder deduplicated = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder totalRebuildNanos = new LongAdder();
+    private final AtomicLong maxRebuildNanos = new AtomicLong();
+
+    public CacheRebuildScheduler(CacheProperties cacheProperties) {
+        this.config = cacheProperties.getRebuild();
+        AtomicInteger threadIndex = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                config.getParallelism(), config.getParallelism(), 0, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<>(),
+                r -> {
+                    Thread thread = new Thread(r, "cache-rebuild-" + threadIndex.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // 线程全部预先启动，任务直接进入优先队列排序
+        executor.prestartAllCoreThreads();
+    }
+
+    /**
+     * 提交重建任务
+     *
+     * @param key      缓存key，用于去重
+     * @param rebuild  重建逻辑
+     * @param release  任务结束或被丢弃时执行，通常用于释放锁
+     * @return 是否已进入队列，返回false时release已执行
+     */
+    public boolean submit(String key, Runnable rebuild, Runnable release) {
+        RebuildTask task = new RebuildTask(key, rebuild, release, sequence.incrementAndGet());
+        // 1. 同一个key已在排队，不重复提交
+        if (pending.putIfAbsent(key, task) != null) {
+            deduplicated.increment();
+            touch(key);
+            release.run();
+            return false;
+        }
+        // 2. 队列已满，丢弃
+        if (executor.getQueue().size() >= config.getQueueCapacity()) {
+            pending.remove(key, task);
+            rejected.increment();
+            log.warn("缓存重建队列已满，丢弃任务，key：{}", key);
+            release.run();
+            return false;
+        }
+        try {
+            executor.execute(task);
+            submitted.increment();
+            return true;
+        } catch (RejectedExecutionException e) {
+            // 3. 应用关闭中
+            pending.remove(key, task);
+            rejected.increment();
+            release.run();
+            return false;
+        }
+    }
+
+    /**
+     * key正在排队或重建时返回true
+     */
+    public boolean isPending(String key) {
+        return pending.containsKey(key);
+    }
+
+    /**
+     * 记录一次对排队中key的访问，提高其优先级
+     */
+    public void touch(String key) {
+        RebuildTask task = pending.get(key);
+        if (task == null) {
+            return;
+        }
+        // 优先队列不会因为元素变化重新排序，先移出再放回
+        synchronized (task) {
+            boolean queued = executor.getQueue().remove(task);
+            task.hits++;
+            if (queued) {
+                executor.getQueue().offer(task);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() throws InterruptedException {
+        executor.shutdown();
+        if (executor.awaitTermination(config.getShutdownTimeoutSeconds(), TimeUnit.SECONDS)) {
+            return;
+        }
+        log.warn("缓存重建任务未在{}秒内完成，强制关闭", config.getShutdownTimeoutSeconds());
+        // 未执行的任务释放锁，让其他节点重建
+        List<Runnable> dropped = executor.shutdownNow();
+        for (Runnable r : dropped) {
+            ((RebuildTask) r).discard();
+        }
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    public long getDeduplicated() {
+        return deduplicated.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * 平均重建耗时，毫秒
+     */
+    public double getAvgRebuildMillis() {
+        long count = completed.sum() + failures.sum();
+        return count == 0 ? 0 : totalRebuildNanos.sum() / 1e6 / count;
+    }
+
+    public long getTotalRebuildNanos() {
+        return totalRebuildNanos.sum();
+    }
+
+    public double getMaxRebuildMillis() {
+        return maxRebuildNanos.get() / 1e6;
+    }
+
+    private final class RebuildTask implements Runnable, Comparable<RebuildTask> {
+        private final String key;
+        private final Runnable rebuild;
+        private final Runnable release;
+        private final long seq;
+        /**
+         * 排队期间的访问次数，只在移出队列时修改
+         */
+        private long hits = 1;
+
+        RebuildTask(String key, Runnable rebuild, Runnable release, long seq) {
+            this.key = key;
+            this.rebuild = rebuild;
+            this.release = release;
+            this.seq = seq;
+        }
+
+        @Override
+        public void run() {
+            long begin = System.nanoTime();
+            try {
+                rebuild.run();
+                completed.increment();
+            } catch (Throwable e) {
+                failures.increment();
+                log.error("缓存重建失败，key：{}", key, e);
+            } finally {
+                long elapsed = System.nanoTime() - begin;
+                totalRebuildNanos.add(elapsed);
+                maxRebuildNanos.accumulateAndGet(elapsed, Math::max);
+                discard();
+            }
+        }
+
+        void discard() {
+            pending.remove(key, this);
+            release.run();
+        }
+
+        @Override
+        public int compareTo(RebuildTask o) {
+            // 访问次数多的优先，相同时先提交的优先
+            int c = Long.compare(o.hits, hits);
+            return c != 0 ? c : Long.compare(seq, o.seq);
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存查询策略，可按key前缀在 hmdp.cache.strategies 中配置
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+public enum CacheStrategy {
+    /**
+     * 缓存空值防穿透，未命中时同步查询数据库
+     */
+    PASS_THROUGH,
+    /**
+     * 逻辑过期，过期后由一个线程异步重建，其余请求返回旧数据
+     */
+    LOGIC_EXPIRE,
+    /**
+     * 逻辑过期基础上按重建耗时概率性地提前刷新(XFetch)，避免到期瞬间所有节点同时抢锁
+     */
+    EARLY_REFRESH
+}
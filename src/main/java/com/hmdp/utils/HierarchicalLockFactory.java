@@ -0,0 +1,253 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.LockProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 两级锁：同一节点的线程先竞争按锁名分段的本地锁，只有分段的持有者再去获取redis锁，
+ * 本节点内的竞争不再产生redis请求。适用于按用户等粒度加锁的临界区。
+ * <p>
+ * 多个锁名可能落在同一分段，分段被同一锁名占用时按等待时间等待，超时返回失败；
+ * 被其他锁名占用到等待时间结束时跳过本地分段直接获取redis锁，不会因为分段冲突返回失败，也不会超出调用方的等待时间。
+ * 指标通过 /actuator/metrics 查看：
+ * <ul>
+ *     <li>lock.stripe.contended：按分段统计的本地竞争次数，stripe 为分段号</li>
+ *     <li>lock.stripe.waiting：按分段统计的排队线程数</li>
+ *     <li>lock.local.wait：本地竞争时的等待耗时</li>
+ *     <li>lock.local.bypassed：分段被其他锁名占用而跳过本地分段的次数</li>
+ *     <li>lock.remote.requests：获取redis锁的次数，result 为 acquired、failed</li>
+ * </ul>
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Component
+@RequiredArgsConstructor
+public class HierarchicalLockFactory {
+
+    /**
+     * 等待被其他锁名占用的分段时，每次等待的时长，之后重新检查分段的持有者
+     */
+    private static final long STRIPE_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final RedisLockFactory redisLockFactory;
+
+    private final LockProperties lockProperties;
+
+    private final MeterRegistry registry;
+
+    private ReentrantLock[] stripes;
+
+    /**
+     * 每个分段当前持有者的锁名，只在首次获取和最后一次释放时修改
+     */
+    private AtomicReferenceArray<String> holders;
+
+    private AtomicLongArray contended;
+
+    private Timer waitTimer;
+
+    @PostConstruct
+    public void init() {
+        // 分段数取2的幂，用位运算定位分段
+        int size = Integer.highestOneBit(Math.max(1, lockProperties.getStripes() - 1)) << 1;
+        stripes = new ReentrantLock[size];
+        holders = new AtomicReferenceArray<>(size);
+        contended = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            ReentrantLock stripe = new ReentrantLock();
+            stripes[i] = stripe;
+            int index = i;
+            FunctionCounter.builder("lock.stripe.contended", contended, c -> c.get(index))
+                    .tag("stripe", String.valueOf(i))
+                    .register(registry);
+            Gauge.builder("lock.stripe.waiting", stripe, ReentrantLock::getQueueLength)
+                    .tag("stripe", String.valueOf(i))
+                    .register(registry);
+        }
+        waitTimer = registry.timer("lock.local.wait");
+    }
+
+    public ILock getLock(String name) {
+        return new HierarchicalLock(name);
+    }
+
+    private int indexOf(String name) {
+        int h = name.hashCode();
+        return (h ^ (h >>> 16)) & (stripes.length - 1);
+    }
+
+    private final class HierarchicalLock implements ILock {
+
+        private final String name;
+
+        private final int index;
+
+        private final ILock remote;
+
+        /**
+         * 当前线程每次持有是否占用了本地分段，解锁时按相反顺序取出
+         */
+        private final ThreadLocal<Deque<Boolean>> holds = ThreadLocal.withInitial(ArrayDeque::new);
+
+        private HierarchicalLock(String name) {
+            this.name = name;
+            this.index = indexOf(name);
+            this.remote = redisLockFactory.getLock(name);
+        }
+
+        @Override
+        public boolean tryLock(long timeoutSeconds) {
+            Local local;
+            try {
+                local = lockLocal(0);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            if (local == Local.FAILED) {
+                return false;
+            }
+            return lockRemote(local == Local.LOCKED, () -> remote.tryLock(timeoutSeconds));
+        }
+
+        @Override
+        public boolean lock(long waitTime, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(waitTime);
+            // 1. 本地分段
+            Local local = lockLocal(unit.toNanos(waitTime));
+            if (local == Local.FAILED) {
+                return false;
+            }
+            // 2. redis锁，使用剩余的等待时间
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            return lockRemote(local == Local.LOCKED, () -> remote.lock(remaining, TimeUnit.NANOSECONDS));
+        }
+
+        @Override
+        public void unlock() {
+            Boolean stripeHeld = holds.get().poll();
+            if (holds.get().isEmpty()) {
+                holds.remove();
+            }
+            try {
+                remote.unlock();
+            } finally {
+                if (Boolean.TRUE.equals(stripeHeld)) {
+                    unlockLocal();
+                }
+            }
+        }
+
+        /**
+         * @param waitNanos 最多等待的时间
+         */
+        private Local lockLocal(long waitNanos) throws InterruptedException {
+            ReentrantLock stripe = stripes[index];
+            if (stripe.tryLock()) {
+                onLocked(stripe);
+                return Local.LOCKED;
+            }
+            contended.incrementAndGet(index);
+            long begin = System.nanoTime();
+            long deadline = begin + waitNanos;
+            try {
+                while (true) {
+                    long remaining = deadline - System.nanoTime();
+                    if (name.equals(holders.get(index))) {
+                        // 1. 本节点其他线程持有同一把锁，按等待时间等待
+                        if (remaining <= 0 || !stripe.tryLock(remaining, TimeUnit.NANOSECONDS)) {
+                            return Local.FAILED;
+                        }
+                        onLocked(stripe);
+                        return Local.LOCKED;
+                    }
+                    // 2. 分段被其他锁名占用，等待时间用完时跳过本地分段，否则等待一小段时间后重新检查持有者
+                    if (remaining <= 0) {
+                        registry.counter("lock.local.bypassed").increment();
+                        return Local.BYPASSED;
+                    }
+                    if (stripe.tryLock(Math.min(remaining, STRIPE_SLICE_NANOS), TimeUnit.NANOSECONDS)) {
+                        onLocked(stripe);
+                        return Local.LOCKED;
+                    }
+                }
+            } finally {
+                waitTimer.record(System.nanoTime() - begin, TimeUnit.NANOSECONDS);
+            }
+        }
+
+        private void onLocked(ReentrantLock stripe) {
+            if (stripe.getHoldCount() == 1) {
+                holders.set(index, name);
+            }
+        }
+
+        private void unlockLocal() {
+            ReentrantLock stripe = stripes[index];
+            if (!stripe.isHeldByCurrentThread()) {
+                return;
+            }
+            // 先清除持有者再释放，其他线程看到同一锁名时分段一定仍被持有
+            if (stripe.getHoldCount() == 1) {
+                holders.set(index, null);
+            }
+            stripe.unlock();
+        }
+
+        /**
+         * @param stripeHeld 是否占用了本地分段，获取失败或抛出异常时释放
+         */
+        private <E extends Exception> boolean lockRemote(boolean stripeHeld, RemoteAttempt<E> attempt) throws E {
+            boolean acquired = false;
+            try {
+                acquired = attempt.run();
+                if (acquired) {
+                    holds.get().push(stripeHeld);
+                }
+                return acquired;
+            } finally {
+                registry.counter("lock.remote.requests", "result", acquired ? "acquired" : "failed").increment();
+                if (!acquired && stripeHeld) {
+                    unlockLocal();
+                }
+                if (!acquired && holds.get().isEmpty()) {
+                    holds.remove();
+                }
+            }
+        }
+    }
+
+    private enum Local {
+        /**
+         * 占用了本地分段
+         */
+        LOCKED,
+        /**
+         * 分段被其他锁名占用，跳过本地分段
+         */
+        BYPASSED,
+        /**
+         * 同一锁名在本节点被其他线程持有，等待超时
+         */
+        FAILED
+    }
+
+    @FunctionalInterface
+    private interface RemoteAttempt<E extends Exception> {
+        boolean run() throws E;
+    }
+}
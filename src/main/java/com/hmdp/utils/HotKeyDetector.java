@@ -0,0 +1,216 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.CacheProperties;
+import com.hmdp.dto.HotKeyDTO;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+
+/**
+ * 热点key探测。用滑动窗口内的多个count-min sketch估算本节点每个key的访问频率，
+ * 超过阈值的key在本地保存一份短时间过期的副本，减少对单个redis分片的访问。
+ * 窗口由若干个桶组成，每过一个桶的时长清空最旧的桶。
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class HotKeyDetector implements MessageListener {
+
+    private final CacheProperties cacheProperties;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 每个桶是一个 depth * width 的计数矩阵
+     */
+    private AtomicIntegerArray[] buckets;
+
+    private long bucketMillis;
+
+    private int width;
+
+    private int depth;
+
+    /**
+     * 当前桶对应的时间片
+     */
+    private final AtomicLong currentSlot = new AtomicLong();
+
+    /**
+     * 热点key -> 成为热点的时间
+     */
+    private final ConcurrentHashMap<String, Long> hotKeys = new ConcurrentHashMap<>();
+
+    private Cache<String, Object> replicas;
+
+    @PostConstruct
+    public void init() {
+        CacheProperties.HotKey config = cacheProperties.getHotKey();
+        width = config.getSketchWidth();
+        depth = config.getSketchDepth();
+        bucketMillis = Math.max(1, TimeUnit.SECONDS.toMillis(config.getWindowSeconds()) / config.getBuckets());
+        buckets = new AtomicIntegerArray[config.getBuckets()];
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new AtomicIntegerArray(width * depth);
+        }
+        currentSlot.set(System.currentTimeMillis() / bucketMillis);
+        replicas = Caffeine.newBuilder()
+                .expireAfterWrite(config.getReplicaTtlMillis(), TimeUnit.MILLISECONDS)
+                .maximumSize(config.getMaxHotKeys())
+                .build();
+        // 缓存失效广播同样删除本地副本
+        listenerContainer.addMessageListener(this, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+    }
+
+    public boolean isEnabled() {
+        return cacheProperties.getHotKey().isEnabled();
+    }
+
+    /**
+     * 记录一次访问
+     *
+     * @return key当前是否为热点
+     */
+    public boolean record(String key) {
+        if (!isEnabled()) {
+            return false;
+        }
+        rotate();
+        int hash = key.hashCode();
+        AtomicIntegerArray bucket = buckets[(int) (currentSlot.get() % buckets.length)];
+        for (int row = 0; row < depth; row++) {
+            bucket.incrementAndGet(row * width + index(hash, row));
+        }
+        if (hotKeys.containsKey(key)) {
+            return true;
+        }
+        CacheProperties.HotKey config = cacheProperties.getHotKey();
+        if (estimate(hash) < config.getThreshold() || hotKeys.size() >= config.getMaxHotKeys()) {
+            return false;
+        }
+        if (hotKeys.putIfAbsent(key, System.currentTimeMillis()) == null) {
+            log.info("发现热点key：{}", key);
+        }
+        return true;
+    }
+
+    /**
+     * 热点key优先读取本地副本，未命中时通过loader读取redis并保存副本。
+     * 不记录访问，调用方在查询本地缓存之前已通过 {@link #record(String)} 记录
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T getOrLoad(String key, Supplier<T> loader) {
+        if (!isEnabled() || !hotKeys.containsKey(key)) {
+            return loader.get();
+        }
+        Object replica = replicas.getIfPresent(key);
+        if (replica != null) {
+            return (T) replica;
+        }
+        T value = loader.get();
+        if (value != null) {
+            replicas.put(key, value);
+        }
+        return value;
+    }
+
+    /**
+     * 删除本节点的副本，key被修改时调用
+     */
+    public void evict(String key) {
+        if (replicas != null) {
+            replicas.invalidate(key);
+        }
+    }
+
+    /**
+     * 当前的热点key，按访问次数倒序
+     */
+    public List<HotKeyDTO> hotKeys() {
+        rotate();
+        return hotKeys.entrySet().stream()
+                .map(e -> new HotKeyDTO(e.getKey(), estimate(e.getKey().hashCode()), e.getValue()))
+                .sorted(Comparator.comparing(HotKeyDTO::getCount).reversed())
+                .toList();
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        evict(new String(message.getBody(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * 进入新的时间片时清空过期的桶，并移除已经冷却的热点key
+     */
+    private void rotate() {
+        long slot = System.currentTimeMillis() / bucketMillis;
+        long current = currentSlot.get();
+        if (slot <= current || !currentSlot.compareAndSet(current, slot)) {
+            return;
+        }
+        for (long s = Math.max(current + 1, slot - buckets.length + 1); s <= slot; s++) {
+            AtomicIntegerArray bucket = buckets[(int) (s % buckets.length)];
+            for (int i = 0; i < bucket.length(); i++) {
+                bucket.set(i, 0);
+            }
+        }
+        // 低于阈值一半才移除，避免在阈值附近反复切换
+        long coolDown = cacheProperties.getHotKey().getThreshold() / 2;
+        hotKeys.keySet().removeIf(key -> {
+            if (estimate(key.hashCode()) >= coolDown) {
+                return false;
+            }
+            log.info("热点key冷却：{}", key);
+            replicas.invalidate(key);
+            return true;
+        });
+    }
+
+    /**
+     * 每一行取窗口内所有桶的和，再取各行的最小值
+     */
+    private long estimate(int hash) {
+        long min = Long.MAX_VALUE;
+        for (int row = 0; row < depth; row++) {
+            int offset = row * width + index(hash, row);
+            long sum = 0;
+            for (AtomicIntegerArray bucket : buckets) {
+                sum += bucket.get(offset);
+            }
+            min = Math.min(min, sum);
+        }
+        return min;
+    }
+
+    /**
+     * 每一行使用不同的种子打散hash
+     */
+    private int index(int hash, int row) {
+        int h = hash * (0x9E3779B1 + row * 0x7FEB352D);
+        h ^= h >>> 15;
+        h *= 0x846CA68B;
+        h ^= h >>> 16;
+        return (h & Integer.MAX_VALUE) % width;
+    }
+}
@@ -3,13 +3,25 @@ package com.hmdp.utils;
 import java.util.concurrent.TimeUnit;
 
 /**
+ * 分布式锁，同一线程可重入，获取几次就要释放几次
+ *
  * @author chake
  * @since 2025/8/7
  */
 
 public interface ILock {
 
+    /**
+     * 尝试获取锁，不等待，超过 timeoutSeconds 后自动释放
+     */
     boolean tryLock(long timeoutSeconds);
 
+    /**
+     * 获取锁，最多等待 waitTime，锁被释放时立即被唤醒。持有期间后台自动续期，直到 unlock
+     *
+     * @param waitTime 为0时不等待
+     */
+    boolean lock(long waitTime, TimeUnit unit) throws InterruptedException;
+
     void unlock();
 }
@@ -0,0 +1,61 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * JSON序列化，与原先 JSONUtil.toJsonStr 写入的格式一致
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Component
+public class JsonCacheCodec implements CacheCodec {
+
+    public static final String NAME = "json";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] encode(Object value) {
+        return JSONUtil.toJsonStr(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public byte[] encodeWithExpire(Object value, long expireAt, long rebuildMillis) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(LocalDateTime.ofInstant(Instant.ofEpochMilli(expireAt), ZoneId.systemDefault()));
+        if (rebuildMillis > 0) {
+            redisData.setRebuildMillis(rebuildMillis);
+        }
+        return JSONUtil.toJsonStr(redisData).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public <R> R decode(byte[] bytes, Class<R> type) {
+        return JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), type);
+    }
+
+    @Override
+    public <R> CacheEntry<R> decodeWithExpire(byte[] bytes, Class<R> type) {
+        // 先解析成RedisData，再把data转成目标类型
+        RedisData redisData = JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), RedisData.class);
+        if (!(redisData.getData() instanceof JSONObject) || redisData.getExpireTime() == null) {
+            return null;
+        }
+        R data = JSONUtil.toBean((JSONObject) redisData.getData(), type);
+        long expireAt = redisData.getExpireTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long rebuildMillis = redisData.getRebuildMillis() == null ? 0 : redisData.getRebuildMillis();
+        return new CacheEntry<>(data, expireAt, rebuildMillis);
+    }
+}
@@ -0,0 +1,136 @@
+package com.hmdp.utils;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.config.CacheProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.CACHE_INVALIDATE_CHANNEL;
+
+/**
+ * 进程内一级缓存，位于 redis 之前。
+ * 写操作通过 redis pub/sub 广播失效消息，所有节点收到后删除本地副本。
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class LocalCache implements MessageListener {
+
+    private final CacheProperties cacheProperties;
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    /**
+     * 每次失效都会递增，读 redis 前记下版本，写回本地缓存时版本变了就放弃，
+     * 避免并发读把失效前的旧值重新放进本地缓存
+     */
+    private final AtomicLong version = new AtomicLong();
+
+    private Cache<String, Node> cache;
+
+    @PostConstruct
+    public void init() {
+        CacheProperties.Local local = cacheProperties.getLocal();
+        Caffeine<Object, Object> builder = Caffeine.newBuilder()
+                .expireAfterWrite(local.getExpireSeconds(), TimeUnit.SECONDS);
+        if (local.getMaximumWeight() > 0) {
+            // 按缓存值大小淘汰
+            builder.maximumWeight(local.getMaximumWeight())
+                    .weigher((String key, Node node) -> node.weight);
+        } else {
+            // 按条目数淘汰
+            builder.maximumSize(local.getMaximumSize());
+        }
+        cache = builder.build();
+        listenerContainer.addMessageListener(this, new ChannelTopic(CACHE_INVALIDATE_CHANNEL));
+    }
+
+    public boolean isEnabled() {
+        return cacheProperties.getLocal().isEnabled();
+    }
+
+    /**
+     * 读 redis 之前获取当前版本，配合 {@link #put(String, Object, int, long)} 使用
+     */
+    public long version() {
+        return version.get();
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Class<T> type) {
+        if (!isEnabled()) {
+            return null;
+        }
+        Node node = cache.getIfPresent(key);
+        if (node == null || !type.isInstance(node.value)) {
+            return null;
+        }
+        return (T) node.value;
+    }
+
+    /**
+     * 写入本地缓存
+     *
+     * @param weight  缓存值的权重，一般取 redis 中序列化后的长度
+     * @param version 读 redis 之前获取的版本，期间发生过失效则不写入
+     */
+    public void put(String key, Object value, int weight, long version) {
+        if (!isEnabled() || value == null) {
+            return;
+        }
+        cache.put(key, new Node(value, Math.max(weight, 1)));
+        if (this.version.get() != version) {
+            // 写入期间发生了失效，撤销本次写入
+            cache.invalidate(key);
+        }
+    }
+
+    /**
+     * 删除所有节点上的本地缓存
+     */
+    public void invalidate(String key) {
+        invalidateLocal(key);
+        redisTemplate.convertAndSend(CACHE_INVALIDATE_CHANNEL, key);
+    }
+
+    public void invalidateLocal(String key) {
+        version.incrementAndGet();
+        if (cache != null) {
+            cache.invalidate(key);
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String key = new String(message.getBody(), StandardCharsets.UTF_8);
+        log.debug("收到本地缓存失效广播，key：{}", key);
+        invalidateLocal(key);
+    }
+
+    private static final class Node {
+        private final Object value;
+        private final int weight;
+
+        private Node(Object value, int weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+}
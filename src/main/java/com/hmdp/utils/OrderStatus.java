@@ -0,0 +1,41 @@
+package com.hmdp.utils;
+
+/**
+ * 秒杀订单的处理状态，redis中只保存一个字符的code
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+public enum OrderStatus {
+    /**
+     * 已扣减redis库存，等待消费者写入数据库
+     */
+    PENDING("P"),
+    /**
+     * 订单已写入数据库
+     */
+    CREATED("C"),
+    /**
+     * 写入数据库失败，如库存不足或重复下单
+     */
+    FAILED("F");
+
+    private final String code;
+
+    OrderStatus(String code) {
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public static OrderStatus of(String code) {
+        for (OrderStatus status : values()) {
+            if (status.code.equals(code)) {
+                return status;
+            }
+        }
+        return null;
+    }
+}
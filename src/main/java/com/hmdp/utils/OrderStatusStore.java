@@ -0,0 +1,190 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.OrderProperties;
+import com.hmdp.dto.Result;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.request.async.DeferredResult;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.ORDER_STATUS_CHANNEL;
+import static com.hmdp.utils.RedisConstants.ORDER_STATUS_KEY;
+
+/**
+ * 秒杀订单状态。订单id的低7位作为字段，其余位作为hash的key，
+ * 每个hash最多128个字段，redis使用紧凑编码保存，每个订单只占几个字节。
+ * 消费者更新状态后广播订单id，唤醒本节点上长轮询等待的请求。
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class OrderStatusStore implements MessageListener {
+
+    private static final int BUCKET_BITS = 7;
+
+    private static final long FIELD_MASK = (1L << BUCKET_BITS) - 1;
+
+    private static final DefaultRedisScript<Long> STATUS_SCRIPT;
+
+    static {
+        STATUS_SCRIPT = new DefaultRedisScript<>();
+        STATUS_SCRIPT.setLocation(new ClassPathResource("order_status.lua"));
+        STATUS_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final OrderProperties orderProperties;
+
+    /**
+     * 订单id -> 等待状态变化的长轮询请求
+     */
+    private final Map<Long, Set<DeferredResult<Result>>> waiters = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(ORDER_STATUS_CHANNEL));
+    }
+
+    public static String bucketKey(long orderId) {
+        return ORDER_STATUS_KEY + (orderId >>> BUCKET_BITS);
+    }
+
+    public static String field(long orderId) {
+        return String.valueOf(orderId & FIELD_MASK);
+    }
+
+    public long ttlSeconds() {
+        return TimeUnit.HOURS.toSeconds(orderProperties.getStatus().getTtlHours());
+    }
+
+    public void markPending(long orderId) {
+        redisTemplate.execute(STATUS_SCRIPT, Collections.singletonList(bucketKey(orderId)),
+                field(orderId), OrderStatus.PENDING.getCode(), String.valueOf(ttlSeconds()));
+    }
+
+    /**
+     * 批量写入状态并广播，一次网络往返
+     */
+    public void update(Map<Long, OrderStatus> statuses) {
+        if (statuses.isEmpty()) {
+            return;
+        }
+        String script = STATUS_SCRIPT.getScriptAsString();
+        String ttl = String.valueOf(ttlSeconds());
+        String ids = statuses.keySet().stream().map(String::valueOf).collect(Collectors.joining(","));
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            statuses.forEach((orderId, status) -> conn.eval(script, ReturnType.INTEGER, 1,
+                    bucketKey(orderId), field(orderId), status.getCode(), ttl));
+            conn.publish(ORDER_STATUS_CHANNEL, ids);
+            return null;
+        });
+    }
+
+    public void update(long orderId, OrderStatus status) {
+        update(Collections.singletonMap(orderId, status));
+    }
+
+    public OrderStatus get(long orderId) {
+        Object code = redisTemplate.opsForHash().get(bucketKey(orderId), field(orderId));
+        return code == null ? null : OrderStatus.of(code.toString());
+    }
+
+    /**
+     * 一次pipeline查询多个订单的状态，没有状态的订单不在结果中
+     */
+    public Map<Long, OrderStatus> get(List<Long> orderIds) {
+        Map<Long, OrderStatus> statuses = new HashMap<>(orderIds.size() * 2);
+        if (orderIds.isEmpty()) {
+            return statuses;
+        }
+        List<Object> codes = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long orderId : orderIds) {
+                conn.hGet(bucketKey(orderId), field(orderId));
+            }
+            return null;
+        });
+        for (int i = 0; i < orderIds.size(); i++) {
+            if (codes.get(i) != null) {
+                statuses.put(orderIds.get(i), OrderStatus.of(codes.get(i).toString()));
+            }
+        }
+        return statuses;
+    }
+
+    /**
+     * 查询订单状态，仍在处理中时最多等待 timeoutMillis，状态变化后立即返回
+     */
+    public DeferredResult<Result> await(long orderId, long timeoutMillis) {
+        DeferredResult<Result> result = new DeferredResult<>(timeoutMillis);
+        if (timeoutMillis <= 0) {
+            result.setResult(toResult(get(orderId)));
+            return result;
+        }
+        // 1. 先登记再查询，避免查询之后、登记之前的广播丢失
+        waiters.compute(orderId, (id, set) -> {
+            set = set == null ? ConcurrentHashMap.newKeySet() : set;
+            set.add(result);
+            return set;
+        });
+        result.onCompletion(() -> removeWaiter(orderId, result));
+        result.onTimeout(() -> result.setResult(toResult(get(orderId))));
+        // 2. 已经不在处理中，直接返回
+        OrderStatus status = get(orderId);
+        if (status != OrderStatus.PENDING) {
+            result.setResult(toResult(status));
+        }
+        return result;
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        for (String id : body.split(",")) {
+            long orderId = Long.parseLong(id);
+            Set<DeferredResult<Result>> set = waiters.get(orderId);
+            if (set == null) {
+                continue;
+            }
+            Result result = toResult(get(orderId));
+            for (DeferredResult<Result> waiter : set) {
+                waiter.setResult(result);
+            }
+        }
+    }
+
+    private void removeWaiter(long orderId, DeferredResult<Result> result) {
+        waiters.computeIfPresent(orderId, (id, set) -> {
+            set.remove(result);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    private static Result toResult(OrderStatus status) {
+        return status == null ? Result.fail("订单不存在") : Result.ok(status);
+    }
+}
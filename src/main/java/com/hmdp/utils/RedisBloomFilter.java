@@ -0,0 +1,189 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 布隆过滤器，位图保存在redis中，本地保留一份镜像用于无网络、无内存分配的判断。
+ * 新增元素时同时写redis位图并广播，其他节点收到后更新本地镜像。
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+public class RedisBloomFilter implements MessageListener {
+
+    private final StringRedisTemplate redisTemplate;
+    private final String key;
+    private final long numBits;
+    private final int numHashes;
+    private final AtomicLongArray bits;
+    private final boolean enabled;
+    /**
+     * 本地镜像加载完成之前一律放行，避免误杀
+     */
+    private volatile boolean ready;
+
+    /**
+     * @param key                redis位图的key
+     * @param expectedInsertions 预计元素数量
+     * @param fpp                期望误判率
+     */
+    public RedisBloomFilter(StringRedisTemplate redisTemplate, String key,
+                            long expectedInsertions, double fpp, boolean enabled) {
+        this.redisTemplate = redisTemplate;
+        this.key = key;
+        this.enabled = enabled;
+        // m = -n * ln(p) / (ln2)^2，k = m / n * ln2
+        long m = (long) (-expectedInsertions * Math.log(fpp) / (Math.log(2) * Math.log(2)));
+        this.numBits = Math.max(64, (m + 63) / 64 * 64);
+        this.numHashes = Math.max(1, (int) Math.round((double) numBits / expectedInsertions * Math.log(2)));
+        this.bits = new AtomicLongArray((int) (numBits / 64));
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    /**
+     * 广播新增元素的频道
+     */
+    public String getChannel() {
+        return key + ":add";
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void markReady() {
+        this.ready = true;
+    }
+
+    /**
+     * 判断元素是否可能存在，返回false时一定不存在
+     */
+    public boolean mightContain(long id) {
+        if (!enabled || !ready) {
+            return true;
+        }
+        long h1 = mix(id);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            long index = Math.floorMod(h1 + i * h2, numBits);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 新增元素：写本地镜像、redis位图，并通知其他节点
+     */
+    public void add(long id) {
+        if (!enabled) {
+            return;
+        }
+        putLocal(id);
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            setBits(conn, id);
+            conn.publish(getChannel(), String.valueOf(id));
+            return null;
+        });
+    }
+
+    /**
+     * 批量新增元素，用于启动时预热，不做广播
+     */
+    public void addAll(Collection<Long> ids) {
+        if (!enabled || ids.isEmpty()) {
+            return;
+        }
+        for (Long id : ids) {
+            putLocal(id);
+        }
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Long id : ids) {
+                setBits(conn, id);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 把redis中已有的位图合并到本地镜像
+     */
+    public void loadFromRedis() {
+        if (!enabled) {
+            return;
+        }
+        byte[] bitmap = redisTemplate.execute((RedisCallback<byte[]>) connection ->
+                connection.stringCommands().get(key.getBytes(StandardCharsets.UTF_8)));
+        if (bitmap == null) {
+            return;
+        }
+        // redis位图中每个字节的最高位是偏移量最小的位
+        long limit = Math.min(numBits, (long) bitmap.length * 8);
+        for (long index = 0; index < limit; index++) {
+            if ((bitmap[(int) (index >>> 3)] & (0x80 >>> (index & 7))) != 0) {
+                setLocalBit(index);
+            }
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        putLocal(Long.parseLong(new String(message.getBody(), StandardCharsets.UTF_8)));
+    }
+
+    private void putLocal(long id) {
+        long h1 = mix(id);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            setLocalBit(Math.floorMod(h1 + i * h2, numBits));
+        }
+    }
+
+    private void setBits(StringRedisConnection conn, long id) {
+        long h1 = mix(id);
+        long h2 = mix(h1) | 1;
+        for (int i = 0; i < numHashes; i++) {
+            conn.setBit(key, Math.floorMod(h1 + i * h2, numBits), true);
+        }
+    }
+
+    private void setLocalBit(long index) {
+        int word = (int) (index >>> 6);
+        long mask = 1L << index;
+        long old;
+        do {
+            old = bits.get(word);
+            if ((old & mask) != 0) {
+                return;
+            }
+        } while (!bits.compareAndSet(word, old, old | mask));
+    }
+
+    /**
+     * murmur3 的 fmix64，把连续的id打散
+     */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -13,13 +13,45 @@ public class RedisConstants {
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
+    public static final Long CACHE_SHOP_LOGIC_TTL = 20L;
+
+    public static final Long CACHE_BLOG_TTL = 30L;
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+
+    public static final Long CACHE_USER_TTL = 30L;
+    public static final String CACHE_USER_KEY = "cache:user:";
+
+    public static final String CACHE_INVALIDATE_CHANNEL = "cache:invalidate";
+
+    public static final String BLOOM_SHOP_KEY = "bloom:shop";
+    public static final String BLOOM_BLOG_KEY = "bloom:blog";
 
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
+    public static final String LOCK_BLOG_KEY = "lock:blog:";
+    public static final String LOCK_USER_KEY = "lock:user:";
+    public static final String RATE_LIMIT_KEY = "limit:";
+    public static final String LOCK_LOAD_KEY = "lock:load:";
+    public static final String LOCK_RELEASED_CHANNEL = "lock:released";
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_ORDER_ID_KEY = "seckill:order:id:";
+    public static final String SECKILL_RECONCILE_CURSOR_KEY = "seckill:reconcile:cursor";
+    public static final String SECKILL_SOLD_OUT_CHANNEL = "seckill:sold-out";
+    public static final String ORDER_STATUS_KEY = "order:status:";
+    public static final String ORDER_STATUS_CHANNEL = "order:status";
+    public static final String ORDER_STREAM_KEY = "stream.orders";
+    public static final String ORDER_STREAM_DLQ_KEY = "stream.orders.dlq";
+    public static final String ORDER_STREAM_LEASE_KEY = "stream.orders.lease:";
+    public static final String ORDER_STREAM_CONSUMERS_KEY = "stream.orders.consumers";
+    public static final String ID_WORKER_KEY = "id:worker:";
+    public static final String ID_WORKER_TIME_KEY = "id:worker:time";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
     public static final String FEED_KEY = "feed:";
+    public static final String FEED_STREAM_KEY = "stream.feed";
+    public static final String FEED_STREAM_DLQ_KEY = "stream.feed.dlq";
+    public static final String FEED_STREAM_CHECKPOINT_KEY = "stream.feed.checkpoint";
     public static final String SHOP_GEO_KEY = "shop:geo:";
     public static final String USER_SIGN_KEY = "sign:";
 
@@ -8,4 +8,8 @@ import java.time.LocalDateTime;
 public class RedisData {
     private LocalDateTime expireTime;
     private Object data;
+    /**
+     * 重建缓存的耗时，毫秒，为null时不写入，兼容旧数据
+     */
+    private Long rebuildMillis;
 }
@@ -1,43 +1,239 @@
 package com.hmdp.utils;
 
+import com.hmdp.config.IdProperties;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
+ * 时间戳 + 当天序列号 的全局id，序列号来自 icr:前缀:日期 的自增。
+ * 号段模式下一次 INCRBY 租用一段序列号在本地分配，id的位布局和redis key不变，两种模式可以混用。
+ * snowflake模式见 {@link SnowflakeIdGenerator}。
+ *
  * @author chake
  * @since 2025/8/6
  */
-
+@Slf4j
 @Component
 @RequiredArgsConstructor
-public class RedisIdWorker {
+public class RedisIdWorker implements DisposableBean {
     // 开始时间
     // 2025-08-06 00:00:00
     private static final long BEGIN_TIMESTAMP = 1754481600L;
     // 系列号位数
     private static final int SEQUENCE_BIT = 32;
 
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
     private final StringRedisTemplate redisTemplate;
 
+    private final IdProperties idProperties;
+
+    private final SnowflakeIdGenerator snowflakeIdGenerator;
+
+    /**
+     * 号段模式下每个前缀一个分配器
+     */
+    private final Map<String, SegmentAllocator> allocators = new ConcurrentHashMap<>();
+
+    /**
+     * 后台预取号段的线程
+     */
+    private final ExecutorService prefetchExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "id-segment-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     public long nextId(String keyPrefix) {
+        // 0. snowflake模式不区分前缀，不访问redis
+        if ("snowflake".equals(idProperties.getMode())) {
+            return snowflakeIdGenerator.nextId();
+        }
         // 1. 生成时间戳
         LocalDateTime now = LocalDateTime.now();
         long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
         long timestamp = nowSecond - BEGIN_TIMESTAMP;
         // 2. 生成序列号
-        // 2.1 获取当前日期，精确到天
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        // 2.2 自增长
-        long count = redisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        long count;
+        if ("segment".equals(idProperties.getMode())) {
+            // 2.1 号段模式，从本地号段分配，号段与日期绑定
+            count = allocators.computeIfAbsent(keyPrefix, SegmentAllocator::new).next(now.toLocalDate());
+        } else {
+            // 2.1 获取当前日期，精确到天
+            String date = now.format(DATE_FORMATTER);
+            // 2.2 自增长
+            count = redisTemplate.opsForValue().increment(sequenceKey(keyPrefix, date));
+        }
         // 3. 拼接并返回
         return timestamp << SEQUENCE_BIT | count;
     }
 
+    private static String sequenceKey(String keyPrefix, String date) {
+        return "icr:" + keyPrefix + ":" + date;
+    }
+
+    @Override
+    public void destroy() {
+        prefetchExecutor.shutdownNow();
+    }
+
+    /**
+     * 一段已租用的序列号 [cursor, end]，分配到 prefetchAt 时预取下一段
+     */
+    private static final class Segment {
+
+        private static final Segment EMPTY = new Segment(LocalDate.MIN, 1, 0, 0);
+
+        private final LocalDate day;
+        private final AtomicLong cursor;
+        private final long end;
+        private final long prefetchAt;
+
+        private Segment(LocalDate day, long start, long end, long prefetchAt) {
+            this.day = day;
+            this.cursor = new AtomicLong(start);
+            this.end = end;
+            this.prefetchAt = prefetchAt;
+        }
+    }
+
+    /**
+     * 无锁的号段分配：当前号段内用 getAndIncrement 分配，用完后CAS切换到预取的号段。
+     * 同一时刻只有一个租用请求，号段长度按实际消耗速度在上下限之间调整。
+     */
+    private final class SegmentAllocator {
+
+        private final String keyPrefix;
+
+        private final AtomicReference<Segment> current = new AtomicReference<>(Segment.EMPTY);
+
+        /**
+         * 正在租用或已经租到、还没切换的下一个号段
+         */
+        private final AtomicReference<CompletableFuture<Segment>> next = new AtomicReference<>();
+
+        /**
+         * 同一时刻只有一个线程租用号段，只在租用时读写
+         */
+        private volatile long step;
+        private volatile long lastLeaseNanos;
+
+        private SegmentAllocator(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+            this.step = idProperties.getSegment().getInitialStep();
+        }
+
+        long next(LocalDate day) {
+            while (true) {
+                Segment segment = current.get();
+                // 1. 当前号段属于今天且没有用完，直接分配
+                if (segment.day.equals(day)) {
+                    long sequence = segment.cursor.getAndIncrement();
+                    if (sequence <= segment.end) {
+                        if (sequence == segment.prefetchAt) {
+                            lease(day, true);
+                        }
+                        return sequence;
+                    }
+                }
+                // 2. 用完或跨天，等待下一个号段，只有一个线程能切换成功
+                CompletableFuture<Segment> pending = lease(day, false);
+                Segment fresh;
+                try {
+                    fresh = pending.join();
+                } catch (CompletionException e) {
+                    next.compareAndSet(pending, null);
+                    throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+                }
+                if (!fresh.day.equals(day)) {
+                    // 跨天前预取的号段属于前一天，不能使用
+                    next.compareAndSet(pending, null);
+                    continue;
+                }
+                if (current.compareAndSet(segment, fresh)) {
+                    next.compareAndSet(pending, null);
+                }
+            }
+        }
+
+        /**
+         * 已有租用请求时直接返回它，否则发起一个
+         *
+         * @param async true时在后台线程租用，用于预取
+         */
+        private CompletableFuture<Segment> lease(LocalDate day, boolean async) {
+            while (true) {
+                CompletableFuture<Segment> pending = next.get();
+                if (pending != null && !pending.isCompletedExceptionally()) {
+                    return pending;
+                }
+                if (pending != null) {
+                    // 上次预取失败，重新租用
+                    next.compareAndSet(pending, null);
+                    continue;
+                }
+                CompletableFuture<Segment> created = new CompletableFuture<>();
+                if (!next.compareAndSet(null, created)) {
+                    continue;
+                }
+                Runnable task = () -> {
+                    try {
+                        created.complete(leaseNow(day));
+                    } catch (Throwable e) {
+                        log.error("号段租用失败，前缀：{}", keyPrefix, e);
+                        created.completeExceptionally(e);
+                    }
+                };
+                if (async) {
+                    try {
+                        prefetchExecutor.execute(task);
+                    } catch (RejectedExecutionException e) {
+                        task.run();
+                    }
+                } else {
+                    task.run();
+                }
+                return created;
+            }
+        }
+
+        private Segment leaseNow(LocalDate day) {
+            IdProperties.Segment options = idProperties.getSegment();
+            // 1. 按距离上次租用的时间调整长度，使每个号段大约使用 targetMillis
+            long nowNanos = System.nanoTime();
+            if (lastLeaseNanos != 0) {
+                long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(nowNanos - lastLeaseNanos);
+                if (elapsedMillis < options.getTargetMillis() / 2) {
+                    step = Math.min(step * 2, options.getMaxStep());
+                } else if (elapsedMillis > options.getTargetMillis() * 2) {
+                    step = Math.max(step / 2, options.getMinStep());
+                }
+            }
+            lastLeaseNanos = nowNanos;
+            // 2. INCRBY 返回号段的末尾
+            long size = step;
+            Long end = redisTemplate.opsForValue().increment(sequenceKey(keyPrefix, day.format(DATE_FORMATTER)), size);
+            if (end == null) {
+                throw new IllegalStateException("号段租用失败");
+            }
+            long start = end - size + 1;
+            long prefetchAt = Math.max(start, end - (long) (size * options.getPrefetchRatio()));
+            return new Segment(day, start, end, prefetchAt);
+        }
+    }
+
     public static void main(String[] args) {
         LocalDateTime time = LocalDateTime.of(2025, 8, 6, 12, 0, 0);
         long timestamp = time.toEpochSecond(ZoneOffset.UTC);
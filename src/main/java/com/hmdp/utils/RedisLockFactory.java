@@ -0,0 +1,199 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.lang.UUID;
+import com.hmdp.config.LockProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+
+import static com.hmdp.utils.RedisConstants.LOCK_RELEASED_CHANNEL;
+
+/**
+ * 创建 {@link SimpleRedisLock}，并负责本节点所有锁的自动续期和释放通知：
+ * 锁完全释放时在 lock:released 频道广播锁的key，唤醒各节点上等待该锁的线程，等待期间不轮询redis。
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class RedisLockFactory implements MessageListener, DisposableBean {
+
+    private static final DefaultRedisScript<Long> LOCK_SCRIPT;
+    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+
+    static {
+        LOCK_SCRIPT = new DefaultRedisScript<>();
+        LOCK_SCRIPT.setLocation(new ClassPathResource("reentrant_lock.lua"));
+        LOCK_SCRIPT.setResultType(Long.class);
+        UNLOCK_SCRIPT = new DefaultRedisScript<>();
+        UNLOCK_SCRIPT.setLocation(new ClassPathResource("reentrant_unlock.lua"));
+        UNLOCK_SCRIPT.setResultType(Long.class);
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("reentrant_renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final LockProperties lockProperties;
+
+    /**
+     * 节点标识，与线程id组成锁的持有者
+     */
+    private final String nodeId = UUID.randomUUID().toString(true);
+
+    /**
+     * 锁的key -> 本节点等待该锁的线程
+     */
+    private final Map<String, Set<Semaphore>> waiters = new ConcurrentHashMap<>();
+
+    /**
+     * 需要自动续期的 锁的key -> 持有者 -> 本次持有的标记。
+     * 每次从未持有到持有生成新的标记，看门狗只移除自己续期时看到的那次持有，释放后立即重新获取的锁不会被误停止续期
+     */
+    private final Map<String, Map<String, Object>> renewals = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService watchdog = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "lock-watchdog");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(LOCK_RELEASED_CHANNEL));
+        long period = watchdogMillis() / 3;
+        watchdog.scheduleWithFixedDelay(this::renewAll, period, period, TimeUnit.MILLISECONDS);
+    }
+
+    public ILock getLock(String name) {
+        return new SimpleRedisLock(name, this);
+    }
+
+    String owner() {
+        return nodeId + ":" + Thread.currentThread().getId();
+    }
+
+    long watchdogMillis() {
+        return TimeUnit.SECONDS.toMillis(lockProperties.getWatchdogSeconds());
+    }
+
+    /**
+     * @return null 获取成功，否则为锁的剩余毫秒数
+     */
+    Long tryAcquire(String key, String owner, long leaseMillis) {
+        return redisTemplate.execute(LOCK_SCRIPT, Collections.singletonList(key), owner, String.valueOf(leaseMillis));
+    }
+
+    /**
+     * @return null 不是自己持有，0 仍持有(重入)，1 已完全释放
+     */
+    Long release(String key, String owner) {
+        Long result = redisTemplate.execute(UNLOCK_SCRIPT, Collections.singletonList(key),
+                owner, LOCK_RELEASED_CHANNEL, key);
+        if (result == null || result == 1) {
+            renewals.computeIfPresent(key, (k, holds) -> {
+                holds.remove(owner);
+                return holds.isEmpty() ? null : holds;
+            });
+        }
+        return result;
+    }
+
+    /**
+     * 重入时沿用已有的标记
+     */
+    void startRenewal(String key, String owner) {
+        renewals.computeIfAbsent(key, k -> new ConcurrentHashMap<>()).putIfAbsent(owner, new Object());
+    }
+
+    /**
+     * 只有持有标记仍是 hold 时才停止续期
+     */
+    private void stopRenewal(String key, String owner, Object hold) {
+        renewals.computeIfPresent(key, (k, holds) -> {
+            holds.remove(owner, hold);
+            return holds.isEmpty() ? null : holds;
+        });
+    }
+
+    /**
+     * 持有者仍存活就续期，续期失败说明锁已过期
+     */
+    private void renewAll() {
+        String lease = String.valueOf(watchdogMillis());
+        renewals.forEach((key, holds) -> {
+            for (Map.Entry<String, Object> entry : holds.entrySet()) {
+                String owner = entry.getKey();
+                try {
+                    Long renewed = redisTemplate.execute(RENEW_SCRIPT, Collections.singletonList(key), owner, lease);
+                    if (renewed == null || renewed == 0) {
+                        // 续期期间持有者可能已释放并重新获取，只停止本次看到的那次持有，正常释放的不记录
+                        if (holds.get(owner) == entry.getValue()) {
+                            log.warn("锁 {} 已不属于 {}，停止续期", key, owner);
+                        }
+                        stopRenewal(key, owner, entry.getValue());
+                    }
+                } catch (Exception e) {
+                    log.error("锁 {} 续期失败", key, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 先登记再重试获取锁，避免重试之后、登记之前的释放通知丢失
+     */
+    Semaphore subscribe(String key) {
+        Semaphore signal = new Semaphore(0);
+        waiters.compute(key, (k, set) -> {
+            set = set == null ? ConcurrentHashMap.newKeySet() : set;
+            set.add(signal);
+            return set;
+        });
+        return signal;
+    }
+
+    void unsubscribe(String key, Semaphore signal) {
+        waiters.computeIfPresent(key, (k, set) -> {
+            set.remove(signal);
+            return set.isEmpty() ? null : set;
+        });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Set<Semaphore> set = waiters.get(new String(message.getBody(), StandardCharsets.UTF_8));
+        if (set == null) {
+            return;
+        }
+        for (Semaphore signal : set) {
+            signal.release();
+        }
+    }
+
+    @Override
+    public void destroy() {
+        watchdog.shutdownNow();
+    }
+}
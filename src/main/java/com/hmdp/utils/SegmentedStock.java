@@ -0,0 +1,157 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.OrderProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.StreamRecords;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_ID_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_ORDER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+
+/**
+ * 分段库存：一张秒杀券的库存拆到 seckill:stock:{voucherId:n} 多个key上，
+ * 用户按id落到固定分段，分段内的库存和下单记录使用相同的hash tag，redis集群下不同分段分布在不同分片。
+ * 所属分段库存不足时依次向其他分段借库存，下单记录仍写在所属分段，保证一人一单。
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SegmentedStock {
+
+    private static final DefaultRedisScript<Long> SEGMENT_SCRIPT;
+    private static final DefaultRedisScript<Long> TAKE_SCRIPT;
+
+    static {
+        SEGMENT_SCRIPT = new DefaultRedisScript<>();
+        SEGMENT_SCRIPT.setLocation(new ClassPathResource("seckill_segment.lua"));
+        SEGMENT_SCRIPT.setResultType(Long.class);
+        TAKE_SCRIPT = new DefaultRedisScript<>();
+        TAKE_SCRIPT.setLocation(new ClassPathResource("seckill_take.lua"));
+        TAKE_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final OrderProperties orderProperties;
+
+    private final OrderStatusStore orderStatusStore;
+
+    public boolean isEnabled() {
+        return segments() > 1;
+    }
+
+    public int segments() {
+        return orderProperties.getStock().getSegments();
+    }
+
+    public static String stockKey(Long voucherId, int segment) {
+        return SECKILL_STOCK_KEY + "{" + voucherId + ":" + segment + "}";
+    }
+
+    public static String orderKey(Long voucherId, int segment) {
+        return SECKILL_ORDER_KEY + "{" + voucherId + ":" + segment + "}";
+    }
+
+    /**
+     * 把库存平均拆分，余数分给前面的分段
+     */
+    public static long[] split(long stock, int segments) {
+        long[] parts = new long[segments];
+        for (int i = 0; i < segments; i++) {
+            parts[i] = stock / segments + (i < stock % segments ? 1 : 0);
+        }
+        return parts;
+    }
+
+    /**
+     * 写入各分段库存
+     *
+     * @param overwrite false时只写入不存在的分段，用于预热，不能覆盖秒杀中的库存
+     */
+    public void init(Long voucherId, long stock, boolean overwrite) {
+        long[] parts = split(stock, segments());
+        redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int i = 0; i < parts.length; i++) {
+                if (overwrite) {
+                    conn.set(stockKey(voucherId, i), String.valueOf(parts[i]));
+                } else {
+                    conn.setNX(stockKey(voucherId, i), String.valueOf(parts[i]));
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * 扣减库存并发送订单消息
+     *
+     * @return 0 成功，1 库存不足，2 重复下单，与 seckill.lua 一致
+     */
+    public int seckill(Long voucherId, Long userId, long orderId) {
+        int segments = segments();
+        int home = (int) Math.floorMod(userId, (long) segments);
+        String user = String.valueOf(userId);
+        // 1. 在所属分段扣减库存
+        Long result = redisTemplate.execute(SEGMENT_SCRIPT,
+                List.of(stockKey(voucherId, home), orderKey(voucherId, home)), user);
+        int r = Math.toIntExact(result);
+        if (r == 2) {
+            return 2;
+        }
+        int taken = home;
+        if (r == 1) {
+            // 2. 所属分段库存不足，依次向其他分段借
+            taken = -1;
+            for (int i = 1; i < segments && taken < 0; i++) {
+                int segment = (home + i) % segments;
+                Long ok = redisTemplate.execute(TAKE_SCRIPT,
+                        Collections.singletonList(stockKey(voucherId, segment)));
+                if (ok != null && ok == 1) {
+                    taken = segment;
+                }
+            }
+            if (taken < 0) {
+                return 1;
+            }
+            // 2.1 下单记录写在所属分段，并发的重复请求只有一个能写入，其余归还借到的库存
+            Long added = redisTemplate.opsForSet().add(orderKey(voucherId, home), user);
+            if (added == null || added == 0) {
+                redisTemplate.opsForValue().increment(stockKey(voucherId, taken));
+                return 2;
+            }
+        }
+        // 3. 记录订单状态，发送订单消息，分段key与stream不在同一个slot，不能放在脚本中
+        try {
+            orderStatusStore.markPending(orderId);
+            redisTemplate.opsForHash().put(SECKILL_ORDER_ID_KEY + voucherId, user, String.valueOf(orderId));
+            redisTemplate.opsForStream().add(StreamRecords.string(Map.of(
+                            "id", String.valueOf(orderId),
+                            "userId", user,
+                            "voucherId", String.valueOf(voucherId)))
+                    .withStreamKey(orderProperties.streamKeyOf(userId, voucherId)));
+        } catch (RuntimeException e) {
+            log.error("订单消息发送失败，归还库存，voucherId：{}，userId：{}", voucherId, userId, e);
+            redisTemplate.opsForValue().increment(stockKey(voucherId, taken));
+            redisTemplate.opsForSet().remove(orderKey(voucherId, home), user);
+            redisTemplate.opsForHash().delete(SECKILL_ORDER_ID_KEY + voucherId, user);
+            orderStatusStore.update(orderId, OrderStatus.FAILED);
+            throw e;
+        }
+        return 0;
+    }
+}
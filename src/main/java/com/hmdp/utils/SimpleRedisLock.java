@@ -1,52 +1,74 @@
 package com.hmdp.utils;
 
-import org.springframework.core.io.ClassPathResource;
-import cn.hutool.core.lang.UUID;
-import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
+import lombok.extern.slf4j.Slf4j;
 
-import java.util.Collections;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 /**
+ * 基于redis hash的可重入锁，字段为 节点标识:线程id，值为重入次数。
+ * 通过 {@link RedisLockFactory#getLock} 创建，续期和释放通知由工厂统一处理
+ *
  * @author chake
  * @since 2025/8/7
  */
+@Slf4j
 public class SimpleRedisLock implements ILock {
 
-    private final StringRedisTemplate redisTemplate;
-    private String name;
     private static final String KEY_PREFIX = "lock:";
-    private static final String ID_PREFIX = UUID.randomUUID().toString(true) + "-";
-    private static final DefaultRedisScript<Long> UNLOCK_SCRIPT;
-    static {
-        UNLOCK_SCRIPT = new DefaultRedisScript<>();
-        UNLOCK_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
-        UNLOCK_SCRIPT.setResultType(Long.class);
 
-    }
+    private final String key;
+    private final RedisLockFactory factory;
 
-    public SimpleRedisLock(String name, StringRedisTemplate redisTemplate) {
-        this.name = name;
-        this.redisTemplate = redisTemplate;
+    public SimpleRedisLock(String name, RedisLockFactory factory) {
+        this.key = KEY_PREFIX + name;
+        this.factory = factory;
     }
 
     @Override
     public boolean tryLock(long timeoutSeconds) {
-        // 获取当前线程游标
-        String threadId = ID_PREFIX + Thread.currentThread().getId();
-        // 尝试获取锁
-        Boolean success = redisTemplate.opsForValue()
-                .setIfAbsent(KEY_PREFIX + name, threadId, timeoutSeconds, TimeUnit.SECONDS);
-        return Boolean.TRUE.equals(success);
+        return factory.tryAcquire(key, factory.owner(), TimeUnit.SECONDS.toMillis(timeoutSeconds)) == null;
+    }
+
+    @Override
+    public boolean lock(long waitTime, TimeUnit unit) throws InterruptedException {
+        String owner = factory.owner();
+        long leaseMillis = factory.watchdogMillis();
+        long deadline = System.nanoTime() + unit.toNanos(waitTime);
+        // 1. 直接获取成功
+        Long ttl = factory.tryAcquire(key, owner, leaseMillis);
+        if (ttl == null) {
+            factory.startRenewal(key, owner);
+            return true;
+        }
+        if (waitTime <= 0) {
+            return false;
+        }
+        // 2. 等待释放通知后重试，通知丢失时最多等到锁过期
+        Semaphore signal = factory.subscribe(key);
+        try {
+            while (true) {
+                ttl = factory.tryAcquire(key, owner, leaseMillis);
+                if (ttl == null) {
+                    factory.startRenewal(key, owner);
+                    return true;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                long waitNanos = ttl > 0 ? Math.min(remaining, TimeUnit.MILLISECONDS.toNanos(ttl)) : remaining;
+                signal.tryAcquire(waitNanos, TimeUnit.NANOSECONDS);
+            }
+        } finally {
+            factory.unsubscribe(key, signal);
+        }
     }
 
     @Override
     public void unlock() {
-        // 调用lua脚本
-        redisTemplate.execute(
-                UNLOCK_SCRIPT,
-                Collections.singletonList(KEY_PREFIX + name),
-                Collections.singletonList(ID_PREFIX + Thread.currentThread().getId()));
+        if (factory.release(key, factory.owner()) == null) {
+            log.warn("锁 {} 已过期或不属于当前线程", key);
+        }
     }
 }
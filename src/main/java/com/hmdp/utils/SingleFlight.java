@@ -0,0 +1,97 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 请求合并：同一个key同一时刻在本节点只有一个线程执行加载，其余线程等待它的结果
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+@Component
+public class SingleFlight {
+
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> calls = new ConcurrentHashMap<>();
+
+    /**
+     * 真正执行加载的次数
+     */
+    private final LongAdder loaderExecutions = new LongAdder();
+    /**
+     * 被合并、等待他人结果的次数
+     */
+    private final LongAdder coalescedWaiters = new LongAdder();
+    /**
+     * 等待超时后自行加载的次数
+     */
+    private final LongAdder waitTimeouts = new LongAdder();
+    /**
+     * 跨节点合并时，等待其他节点加载的次数
+     */
+    private final LongAdder remoteWaiters = new LongAdder();
+
+    @SuppressWarnings("unchecked")
+    public <T> T execute(String key, Supplier<T> loader, long timeout, TimeUnit timeUnit) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = calls.putIfAbsent(key, future);
+        if (inFlight == null) {
+            // 1. 没有正在进行的加载，由当前线程执行
+            loaderExecutions.increment();
+            try {
+                T value = loader.get();
+                future.complete(value);
+                return value;
+            } catch (RuntimeException e) {
+                future.completeExceptionally(e);
+                throw e;
+            } finally {
+                calls.remove(key, future);
+            }
+        }
+        // 2. 已有线程在加载，等待其结果
+        coalescedWaiters.increment();
+        try {
+            return (T) inFlight.get(timeout, timeUnit);
+        } catch (TimeoutException e) {
+            // 2.1 等待超时，自行加载，避免被卡住的加载线程拖住所有请求
+            waitTimeouts.increment();
+            log.warn("等待合并请求超时，key：{}", key);
+            return loader.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void recordRemoteWaiter() {
+        remoteWaiters.increment();
+    }
+
+    public long getLoaderExecutions() {
+        return loaderExecutions.sum();
+    }
+
+    public long getCoalescedWaiters() {
+        return coalescedWaiters.sum();
+    }
+
+    public long getWaitTimeouts() {
+        return waitTimeouts.sum();
+    }
+
+    public long getRemoteWaiters() {
+        return remoteWaiters.sum();
+    }
+}
@@ -0,0 +1,270 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.RandomUtil;
+import com.hmdp.config.IdProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.ID_WORKER_KEY;
+import static com.hmdp.utils.RedisConstants.ID_WORKER_TIME_KEY;
+
+/**
+ * snowflake风格的id：0 | 1 | 毫秒时间戳 | 机器号 | 毫秒内序列号。
+ * 次高位固定为1，与incr、segment模式的id(秒级时间戳左移32位)不会重复，可以从其他模式切换过来。
+ * <p>
+ * 机器号启动时从redis租用并定期续约，生成id时不访问redis也不加锁：上次的时间戳和序列号打包在一个long中CAS更新。
+ * 时钟回拨在 maxBackwardMillis 以内时沿用上次的时间戳，相当于逻辑时钟暂停，超过时拒绝生成；
+ * 续约时记录上次的时间戳，机器号被其他节点接手后从该时间之后继续，重启后时钟回拨也不会重复。
+ * 正常关闭时记录最终的时间戳并标记为已释放，接手的节点直接从该时间继续；
+ * 持有者宕机时接手的节点还要再加一个租约时长，超前于当前时间时等待时钟追上，而不是按时钟回拨拒绝生成。
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SnowflakeIdGenerator implements DisposableBean {
+
+    /**
+     * 与 RedisIdWorker 相同的起始时间 2025-08-06 12:00:00 UTC
+     */
+    private static final long BEGIN_MILLIS = 1754481600_000L;
+
+    /**
+     * 机器号时间戳hash中正常释放标记的字段后缀
+     */
+    private static final String RELEASED_SUFFIX = ":released";
+
+    private static final DefaultRedisScript<Long> RENEW_SCRIPT;
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT;
+
+    static {
+        RENEW_SCRIPT = new DefaultRedisScript<>();
+        RENEW_SCRIPT.setLocation(new ClassPathResource("lease_renew.lua"));
+        RENEW_SCRIPT.setResultType(Long.class);
+        RELEASE_SCRIPT = new DefaultRedisScript<>();
+        RELEASE_SCRIPT.setLocation(new ClassPathResource("unlock.lua"));
+        RELEASE_SCRIPT.setResultType(Long.class);
+    }
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final IdProperties idProperties;
+
+    /**
+     * 上次的时间戳(相对BEGIN_MILLIS) << sequenceBits | 序列号
+     */
+    private final AtomicLong state = new AtomicLong();
+
+    private final String owner = ManagementFactory.getRuntimeMXBean().getName() + "-" + RandomUtil.randomString(4);
+
+    private int sequenceBits;
+    private long sequenceMask;
+    private int timestampShift;
+    private long maxBackwardMillis;
+    private long leaseMillis;
+
+    /**
+     * 当前持有的机器号，续约失败后重新租用时整体替换
+     */
+    private volatile Lease lease;
+
+    private ScheduledExecutorService heartbeat;
+
+    @PostConstruct
+    public void init() {
+        if (!"snowflake".equals(idProperties.getMode())) {
+            return;
+        }
+        IdProperties.Snowflake config = idProperties.getSnowflake();
+        if (config.getWorkerBits() + config.getSequenceBits() > 22) {
+            throw new IllegalStateException("机器号与序列号位数之和不能超过22");
+        }
+        sequenceBits = config.getSequenceBits();
+        sequenceMask = (1L << sequenceBits) - 1;
+        timestampShift = config.getWorkerBits() + sequenceBits;
+        maxBackwardMillis = config.getMaxBackwardMillis();
+        leaseMillis = TimeUnit.SECONDS.toMillis(config.getLeaseSeconds());
+        // 1. 租用机器号，失败时启动失败
+        lease = acquire();
+        // 2. 定期续约并记录时间戳
+        heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "id-worker-heartbeat");
+            thread.setDaemon(true);
+            return thread;
+        });
+        heartbeat.scheduleWithFixedDelay(this::renew, leaseMillis / 3, leaseMillis / 3, TimeUnit.MILLISECONDS);
+    }
+
+    public long nextId() {
+        Lease current = lease;
+        if (current == null) {
+            throw new IllegalStateException("未开启snowflake模式");
+        }
+        // 1. 租约到期前续约失败，机器号可能已被其他节点使用
+        if (System.nanoTime() - current.deadline >= 0) {
+            throw new IllegalStateException("机器号 " + current.worker + " 的租约已失效");
+        }
+        while (true) {
+            long prev = state.get();
+            long lastMillis = prev >>> sequenceBits;
+            long sequence = prev & sequenceMask;
+            long now = System.currentTimeMillis() - BEGIN_MILLIS;
+            long millis;
+            if (now > lastMillis) {
+                // 2. 进入新的毫秒，序列号从0开始
+                millis = now;
+                sequence = 0;
+            } else if (lastMillis - now > maxBackwardMillis) {
+                // 3. 时钟回拨过多，拒绝生成
+                throw new IllegalStateException("时钟回拨 " + (lastMillis - now) + " ms");
+            } else if (sequence < sequenceMask) {
+                // 4. 同一毫秒或小幅回拨，沿用上次的时间戳
+                millis = lastMillis;
+                sequence++;
+            } else if (lastMillis + 1 - now <= maxBackwardMillis) {
+                // 5. 序列号用完，借用下一毫秒
+                millis = lastMillis + 1;
+                sequence = 0;
+            } else {
+                Thread.onSpinWait();
+                continue;
+            }
+            if (state.compareAndSet(prev, millis << sequenceBits | sequence)) {
+                return 1L << 62 | millis << timestampShift | (long) current.worker << sequenceBits | sequence;
+            }
+        }
+    }
+
+    public Integer getWorker() {
+        Lease current = lease;
+        return current == null ? null : current.worker;
+    }
+
+    /**
+     * 从随机位置开始找一个空闲的机器号
+     */
+    private Lease acquire() {
+        int workers = 1 << idProperties.getSnowflake().getWorkerBits();
+        int start = RandomUtil.randomInt(workers);
+        for (int i = 0; i < workers; i++) {
+            int worker = (start + i) % workers;
+            long begin = System.nanoTime();
+            Boolean ok = redisTemplate.opsForValue()
+                    .setIfAbsent(ID_WORKER_KEY + worker, owner, leaseMillis, TimeUnit.MILLISECONDS);
+            if (!Boolean.TRUE.equals(ok)) {
+                continue;
+            }
+            // 上一个持有者正常释放时从它最后的时间的下一毫秒开始，宕机时它在租约到期前都可能在生成id，再加一个租约时长
+            String field = String.valueOf(worker);
+            List<Object> last = redisTemplate.opsForHash().multiGet(ID_WORKER_TIME_KEY,
+                    Arrays.asList(field, field + RELEASED_SUFFIX));
+            if (last.get(0) != null) {
+                boolean released = last.get(1) != null;
+                long floor = Long.parseLong(last.get(0).toString()) + (released ? 1 : leaseMillis) - BEGIN_MILLIS;
+                state.accumulateAndGet(floor << sequenceBits, Math::max);
+                if (released) {
+                    redisTemplate.opsForHash().delete(ID_WORKER_TIME_KEY, field + RELEASED_SUFFIX);
+                }
+                awaitClock(floor);
+            }
+            log.info("租用机器号 {}，持有者 {}", worker, owner);
+            return new Lease(worker, deadline(begin));
+        }
+        throw new IllegalStateException("没有空闲的机器号");
+    }
+
+    private void renew() {
+        Lease current = lease;
+        try {
+            long begin = System.nanoTime();
+            Long renewed = redisTemplate.execute(RENEW_SCRIPT,
+                    Collections.singletonList(ID_WORKER_KEY + current.worker), owner, String.valueOf(leaseMillis));
+            if (renewed == null || renewed == 0) {
+                // 租约已过期被其他节点拿走，换一个机器号
+                log.warn("机器号 {} 的租约已丢失，重新租用", current.worker);
+                lease = acquire();
+                return;
+            }
+            lease = new Lease(current.worker, deadline(begin));
+            saveLastMillis(current.worker);
+        } catch (Exception e) {
+            // 在租约到期前还有两次重试机会
+            log.error("机器号 {} 续约失败", current.worker, e);
+        }
+    }
+
+    /**
+     * 起始时间超前于当前时间超过允许的回拨时，等待时钟追上，之后生成的id不会被当作时钟回拨拒绝
+     */
+    private void awaitClock(long floor) {
+        long ahead = floor - (System.currentTimeMillis() - BEGIN_MILLIS) - maxBackwardMillis;
+        if (ahead <= 0) {
+            return;
+        }
+        log.warn("机器号的起始时间超前当前时间，等待 {} ms", ahead);
+        try {
+            Thread.sleep(ahead);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待时钟时被中断", e);
+        }
+    }
+
+    private void saveLastMillis(int worker) {
+        redisTemplate.opsForHash().put(ID_WORKER_TIME_KEY, String.valueOf(worker), String.valueOf(lastMillis()));
+    }
+
+    private long lastMillis() {
+        return Math.max((state.get() >>> sequenceBits) + BEGIN_MILLIS, System.currentTimeMillis());
+    }
+
+    /**
+     * 本地认为租约有效的截止时间，比redis中的过期时间早十分之一个租约
+     */
+    private long deadline(long beginNanos) {
+        return beginNanos + TimeUnit.MILLISECONDS.toNanos(leaseMillis - leaseMillis / 10);
+    }
+
+    @Override
+    public void destroy() {
+        if (heartbeat == null) {
+            return;
+        }
+        heartbeat.shutdownNow();
+        Lease current = lease;
+        lease = null;
+        // 最终的时间戳与释放标记一起写入，接手的节点不需要再加租约时长
+        String field = String.valueOf(current.worker);
+        redisTemplate.opsForHash().putAll(ID_WORKER_TIME_KEY,
+                Map.of(field, String.valueOf(lastMillis()), field + RELEASED_SUFFIX, "1"));
+        redisTemplate.execute(RELEASE_SCRIPT, Collections.singletonList(ID_WORKER_KEY + current.worker), owner);
+    }
+
+    private static final class Lease {
+        private final int worker;
+        private final long deadline;
+
+        private Lease(int worker, long deadline) {
+            this.worker = worker;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.hmdp.utils;
+
+import com.hmdp.config.OrderProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static com.hmdp.utils.RedisConstants.SECKILL_SOLD_OUT_CHANNEL;
+
+/**
+ * 本节点的售罄标记。秒杀脚本返回库存不足时标记并广播，之后的请求直接返回，不再访问redis。
+ * 补充库存时清除标记；标记超过 hmdp.order.sold-out.ttl-seconds 自动失效，防止广播丢失后一直拦截。
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SoldOutRegistry implements MessageListener {
+
+    private static final String MARK = "+";
+    private static final String CLEAR = "-";
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final RedisMessageListenerContainer listenerContainer;
+
+    private final OrderProperties orderProperties;
+
+    /**
+     * 优惠券id -> 标记时间
+     */
+    private final ConcurrentHashMap<Long, Long> soldOut = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        listenerContainer.addMessageListener(this, new ChannelTopic(SECKILL_SOLD_OUT_CHANNEL));
+    }
+
+    public boolean isSoldOut(Long voucherId) {
+        OrderProperties.SoldOut config = orderProperties.getSoldOut();
+        if (!config.isEnabled()) {
+            return false;
+        }
+        Long markedAt = soldOut.get(voucherId);
+        if (markedAt == null) {
+            return false;
+        }
+        if (System.currentTimeMillis() - markedAt > TimeUnit.SECONDS.toMillis(config.getTtlSeconds())) {
+            soldOut.remove(voucherId, markedAt);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 标记售罄并通知所有节点
+     */
+    public void markSoldOut(Long voucherId) {
+        if (!orderProperties.getSoldOut().isEnabled()) {
+            return;
+        }
+        // 本节点已标记过，不重复广播
+        if (soldOut.put(voucherId, System.currentTimeMillis()) == null) {
+            redisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, MARK + voucherId);
+        }
+    }
+
+    /**
+     * 清除所有节点的售罄标记，库存增加时调用
+     */
+    public void clear(Long voucherId) {
+        soldOut.remove(voucherId);
+        redisTemplate.convertAndSend(SECKILL_SOLD_OUT_CHANNEL, CLEAR + voucherId);
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        Long voucherId = Long.valueOf(body.substring(1));
+        if (body.startsWith(MARK)) {
+            soldOut.putIfAbsent(voucherId, System.currentTimeMillis());
+        } else {
+            log.debug("清除售罄标记，voucherId：{}", voucherId);
+            soldOut.remove(voucherId);
+        }
+    }
+}
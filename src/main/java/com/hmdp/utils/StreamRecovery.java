@@ -0,0 +1,266 @@
+package com.hmdp.utils;
+
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisStreamCommands;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.RedisZSetCommands.Limit;
+import org.springframework.data.redis.connection.stream.*;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * 消费者组pending消息的恢复，可用于任意stream。
+ * 定期用 XPENDING 找出空闲时间超过退避时长的消息(包括已宕机消费者的消息)，XCLAIM 到当前消费者后重新处理，
+ * 每次从上次检查到的位置继续分页，pending列表头部的消息都在退避中时也能检查到后面的消息；
+ * 投递次数达到上限的消息转入死信stream并ACK，不再阻塞后续消息，可以通过 {@link #replay} 重新投递。
+ * <p>
+ * spring-data-redis 2.7 不支持 XAUTOCLAIM，StreamOperations 也没有 XCLAIM，用 XPENDING + 连接上带最小空闲时间的 XCLAIM 实现，
+ * XCLAIM 的最小空闲时间保证同一条消息只会被一个消费者认领。
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+public class StreamRecovery {
+
+    /**
+     * 死信消息中记录来源的字段
+     */
+    private static final String ORIGIN_STREAM = "_stream";
+    private static final String ORIGIN_ID = "_id";
+    private static final String DELIVERIES = "_deliveries";
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final String group;
+
+    private final String deadLetterKey;
+
+    private final Options options;
+
+    /**
+     * stream key -> 下次检查的起始id，到达pending列表末尾后删除，下次从头开始
+     */
+    private final Map<String, String> cursors = new ConcurrentHashMap<>();
+
+    /**
+     * 消息转入死信后的回调
+     */
+    private Consumer<MapRecord<String, Object, Object>> deadLetterListener = record -> {
+    };
+
+    private final AtomicLong claimed = new AtomicLong();
+
+    private final AtomicLong recovered = new AtomicLong();
+
+    private final AtomicLong deadLettered = new AtomicLong();
+
+    public StreamRecovery(StringRedisTemplate redisTemplate, String group, String deadLetterKey, Options options) {
+        this.redisTemplate = redisTemplate;
+        this.group = group;
+        this.deadLetterKey = deadLetterKey;
+        this.options = options;
+    }
+
+    /**
+     * 设置消息转入死信后的回调，例如把业务状态改为失败
+     */
+    public StreamRecovery onDeadLetter(Consumer<MapRecord<String, Object, Object>> listener) {
+        this.deadLetterListener = listener;
+        return this;
+    }
+
+    /**
+     * 恢复一个stream中的pending消息
+     *
+     * @param handler 处理一条消息，成功时由handler负责ACK，抛出异常的消息留在pending列表中等待下次恢复
+     * @return 处理成功的消息数
+     */
+    public int recover(String streamKey, String consumerName, Consumer<MapRecord<String, Object, Object>> handler) {
+        // 0. 从上次的位置检查一页，不足一页说明已到末尾，下次从头开始
+        String from = cursors.get(streamKey);
+        Range<String> range = from == null ? Range.unbounded() : Range.rightUnbounded(Range.Bound.inclusive(from));
+        PendingMessages pending = redisTemplate.opsForStream()
+                .pending(streamKey, group, range, options.getBatchSize());
+        if (pending.size() < options.getBatchSize()) {
+            cursors.remove(streamKey);
+        } else {
+            RecordId last = pending.get(pending.size() - 1).getId();
+            cursors.put(streamKey, RecordId.of(last.getTimestamp(), last.getSequence() + 1).getValue());
+        }
+        int count = 0;
+        for (PendingMessage message : pending) {
+            long deliveries = message.getTotalDeliveryCount();
+            long backoff = backoffMillis(deliveries);
+            // 1. 距离上次投递的时间不足退避时长，跳过
+            if (message.getElapsedTimeSinceLastDelivery().toMillis() < backoff) {
+                continue;
+            }
+            // 2. 认领消息，其他消费者刚认领或刚投递过时认领不到
+            List<StringRecord> records = redisTemplate.execute((RedisCallback<List<StringRecord>>) connection ->
+                    ((StringRedisConnection) connection).xClaim(streamKey, group, consumerName,
+                            RedisStreamCommands.XClaimOptions.minIdle(Duration.ofMillis(backoff)).ids(message.getId())));
+            if (records == null || records.isEmpty()) {
+                continue;
+            }
+            claimed.incrementAndGet();
+            MapRecord<String, Object, Object> record = StreamRecords.<String, Object, Object>mapBacked(
+                            new LinkedHashMap<>(records.get(0).getValue()))
+                    .withStreamKey(streamKey)
+                    .withId(records.get(0).getId());
+            // 3. 投递次数达到上限，转入死信
+            if (deliveries >= options.getMaxDeliveries()) {
+                deadLetter(record, deliveries + 1);
+                continue;
+            }
+            // 4. 重新处理
+            try {
+                handler.accept(record);
+                recovered.incrementAndGet();
+                count++;
+            } catch (Exception e) {
+                log.warn("消息第 {} 次处理失败，stream：{}，id：{}", deliveries + 1, streamKey, record.getId(), e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 第n次投递失败后，至少等待 backoff * 2^(n-1) 再重试
+     */
+    private long backoffMillis(long deliveries) {
+        int shift = (int) Math.min(Math.max(deliveries - 1, 0), 30);
+        return Math.min(options.getBackoffMillis() << shift, options.getMaxBackoffMillis());
+    }
+
+    private void deadLetter(MapRecord<String, Object, Object> record, long deliveries) {
+        Map<String, String> body = toStringMap(record.getValue());
+        body.put(ORIGIN_STREAM, record.getStream());
+        body.put(ORIGIN_ID, record.getId().getValue());
+        body.put(DELIVERIES, String.valueOf(deliveries));
+        redisTemplate.opsForStream().add(StreamRecords.string(body).withStreamKey(deadLetterKey));
+        redisTemplate.opsForStream().acknowledge(record.getStream(), group, record.getId());
+        deadLettered.incrementAndGet();
+        log.error("消息投递 {} 次仍失败，转入死信，stream：{}，id：{}，内容：{}",
+                deliveries, record.getStream(), record.getId(), record.getValue());
+        try {
+            deadLetterListener.accept(record);
+        } catch (RuntimeException e) {
+            log.error("死信回调失败，stream：{}，id：{}", record.getStream(), record.getId(), e);
+        }
+    }
+
+    /**
+     * 查看死信消息
+     */
+    public List<Map<String, Object>> deadLetters(int count) {
+        List<MapRecord<String, Object, Object>> records = redisTemplate.opsForStream()
+                .range(deadLetterKey, Range.unbounded(), Limit.limit().count(count));
+        List<Map<String, Object>> result = new ArrayList<>();
+        if (records == null) {
+            return result;
+        }
+        for (MapRecord<String, Object, Object> record : records) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("id", record.getId().getValue());
+            item.putAll(toStringMap(record.getValue()));
+            result.add(item);
+        }
+        return result;
+    }
+
+    /**
+     * 把死信消息重新投递到原来的stream
+     *
+     * @param ids 要重新投递的死信id，为空时按顺序投递最多count条
+     * @return 重新投递的消息数
+     */
+    public int replay(List<String> ids, int count) {
+        List<MapRecord<String, Object, Object>> records = new ArrayList<>();
+        if (ids == null || ids.isEmpty()) {
+            List<MapRecord<String, Object, Object>> range = redisTemplate.opsForStream()
+                    .range(deadLetterKey, Range.unbounded(), Limit.limit().count(count));
+            if (range != null) {
+                records.addAll(range);
+            }
+        } else {
+            for (String id : ids) {
+                List<MapRecord<String, Object, Object>> range = redisTemplate.opsForStream()
+                        .range(deadLetterKey, Range.closed(id, id));
+                if (range != null) {
+                    records.addAll(range);
+                }
+            }
+        }
+        int replayed = 0;
+        for (MapRecord<String, Object, Object> record : records) {
+            Map<String, String> body = toStringMap(record.getValue());
+            String stream = body.remove(ORIGIN_STREAM);
+            body.remove(ORIGIN_ID);
+            body.remove(DELIVERIES);
+            if (stream == null) {
+                log.error("死信消息缺少来源stream，id：{}", record.getId());
+                continue;
+            }
+            // 先投递再删除，删除失败最多重复投递，消费端是幂等的
+            redisTemplate.opsForStream().add(StreamRecords.string(body).withStreamKey(stream));
+            redisTemplate.opsForStream().delete(deadLetterKey, record.getId());
+            replayed++;
+        }
+        return replayed;
+    }
+
+    private static Map<String, String> toStringMap(Map<Object, Object> value) {
+        Map<String, String> map = new LinkedHashMap<>();
+        value.forEach((k, v) -> map.put(k.toString(), v.toString()));
+        return map;
+    }
+
+    public long getClaimed() {
+        return claimed.get();
+    }
+
+    public long getRecovered() {
+        return recovered.get();
+    }
+
+    public long getDeadLettered() {
+        return deadLettered.get();
+    }
+
+    public Long getDeadLetterSize() {
+        return redisTemplate.opsForStream().size(deadLetterKey);
+    }
+
+    @Data
+    public static class Options {
+        /**
+         * 两次恢复的间隔
+         */
+        private long intervalMillis = 5000;
+        /**
+         * 每次最多检查的pending消息数
+         */
+        private int batchSize = 100;
+        /**
+         * 最多投递次数，达到后转入死信
+         */
+        private int maxDeliveries = 5;
+        /**
+         * 第一次失败后的重试间隔，之后每次翻倍
+         */
+        private long backoffMillis = 1000;
+        /**
+         * 重试间隔的上限
+         */
+        private long maxBackoffMillis = 60000;
+    }
+}
@@ -0,0 +1,22 @@
+-- 推送任务的进度，只有任务仍属于当前消费者时才写入，避免被接手后原消费者恢复运行时回退进度
+-- KEYS[1] 任务stream，KEYS[2] 进度hash
+-- ARGV[1] 消费者组，ARGV[2] 消费者，ARGV[3] 任务id，ARGV[4] 笔记id，ARGV[5] 已推送的最后一条关注记录id，ARGV[6] page：记录进度；done：推送完成
+-- 1. 任务已不在当前消费者的pending列表中，返回0
+local pending = redis.call('xpending', KEYS[1], ARGV[1], ARGV[3], ARGV[3], 1)
+if (#pending == 0 or pending[1][2] ~= ARGV[2]) then
+    return 0
+end
+-- 2. 推送完成，删除进度和任务
+if (ARGV[6] == 'done') then
+    redis.call('hdel', KEYS[2], ARGV[4])
+    redis.call('xack', KEYS[1], ARGV[1], ARGV[3])
+    redis.call('xdel', KEYS[1], ARGV[3])
+    return 1
+end
+-- 3. 进度只前进，并重置任务的空闲时间，避免执行中的长任务被恢复流程认领
+local current = tonumber(redis.call('hget', KEYS[2], ARGV[4]) or '0')
+if (tonumber(ARGV[5]) > current) then
+    redis.call('hset', KEYS[2], ARGV[4], ARGV[5])
+end
+redis.call('xclaim', KEYS[1], ARGV[1], ARGV[2], 0, ARGV[3], 'JUSTID')
+return 1
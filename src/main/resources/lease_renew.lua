@@ -0,0 +1,5 @@
+-- 租约仍属于自己时续期
+if (redis.call('get', KEYS[1]) == ARGV[1]) then
+    return redis.call('pexpire', KEYS[1], ARGV[2])
+end
+return 0
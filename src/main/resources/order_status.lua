@@ -0,0 +1,8 @@
+-- 写入订单状态，已创建的订单不能改回其他状态
+-- KEYS[1] 状态hash，ARGV[1] 字段，ARGV[2] 状态，ARGV[3] 过期秒数
+if (redis.call('hget', KEYS[1], ARGV[1]) == 'C') then
+    return 0
+end
+redis.call('hset', KEYS[1], ARGV[1], ARGV[2])
+redis.call('expire', KEYS[1], ARGV[3])
+return 1
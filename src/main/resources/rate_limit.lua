@@ -0,0 +1,17 @@
+-- 滑动窗口限流，窗口内的请求按时间保存在zset中
+-- KEYS[1] 计数key，ARGV[1] 窗口毫秒数，ARGV[2] 窗口内允许的请求数，ARGV[3] 本次请求的唯一标识
+
+-- 1. 使用redis的时间，避免各节点时钟不一致
+local time = redis.call('time')
+local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+local window = tonumber(ARGV[1])
+-- 2. 删除窗口外的请求
+redis.call('zremrangebyscore', KEYS[1], 0, now - window)
+-- 3. 窗口内请求数已满，拒绝
+if (redis.call('zcard', KEYS[1]) >= tonumber(ARGV[2])) then
+    return 0
+end
+-- 4. 记录本次请求
+redis.call('zadd', KEYS[1], now, ARGV[3])
+redis.call('pexpire', KEYS[1], window)
+return 1
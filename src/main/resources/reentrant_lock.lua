@@ -0,0 +1,10 @@
+-- 可重入锁，hash的字段为持有者(节点标识:线程id)，值为重入次数
+-- KEYS[1] 锁的key，ARGV[1] 持有者，ARGV[2] 过期毫秒数
+-- 1. 没有人持有或自己持有，重入次数加1并刷新过期时间
+if (redis.call('exists', KEYS[1]) == 0 or redis.call('hexists', KEYS[1], ARGV[1]) == 1) then
+    redis.call('hincrby', KEYS[1], ARGV[1], 1)
+    redis.call('pexpire', KEYS[1], ARGV[2])
+    return nil
+end
+-- 2. 被其他人持有，返回剩余时间
+return redis.call('pttl', KEYS[1])
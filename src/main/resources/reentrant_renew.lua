@@ -0,0 +1,6 @@
+-- 锁仍被自己持有时续期
+-- KEYS[1] 锁的key，ARGV[1] 持有者，ARGV[2] 过期毫秒数
+if (redis.call('hexists', KEYS[1], ARGV[1]) == 1) then
+    return redis.call('pexpire', KEYS[1], ARGV[2])
+end
+return 0
@@ -0,0 +1,13 @@
+-- KEYS[1] 锁的key，ARGV[1] 持有者，ARGV[2] 释放通知的频道，ARGV[3] 锁名
+-- 1. 不是自己持有，可能已过期
+if (redis.call('hexists', KEYS[1], ARGV[1]) == 0) then
+    return nil
+end
+-- 2. 重入次数减1，仍大于0时继续持有
+if (redis.call('hincrby', KEYS[1], ARGV[1], -1) > 0) then
+    return 0
+end
+-- 3. 完全释放，通知等待的线程
+redis.call('del', KEYS[1])
+redis.call('publish', ARGV[2], ARGV[3])
+return 1
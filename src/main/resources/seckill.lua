@@ -5,12 +5,29 @@ local voucherId = ARGV[1]
 local userId = ARGV[2]
 -- 1.3 订单id
 local orderId = ARGV[3]
+-- 1.4 订单消息队列分区数
+local partitions = tonumber(ARGV[4])
+-- 1.5 分区依据 user 或 voucher
+local routeBy = ARGV[5]
+-- 1.6 订单状态hash、字段和过期秒数
+local statusKey = ARGV[6]
+local statusField = ARGV[7]
+local statusTtl = ARGV[8]
 
 -- 2.数据key
 -- 2.1 库存key
 local stockKey = "seckill:stock:".. voucherId
 -- 2.2 订单key
 local orderKey = "seckill:order:".. voucherId
+-- 2.3 订单消息队列，分区数大于1时按用户或优惠券id取模
+local streamKey = "stream.orders"
+if (partitions ~= nil and partitions > 1) then
+    local routeId = voucherId
+    if (routeBy == "user") then
+        routeId = userId
+    end
+    streamKey = streamKey .. "." .. (tonumber(routeId) % partitions)
+end
 
 -- 3.脚本业务
 -- 3.1 判断库存是否充足 get stockKey
@@ -27,6 +44,13 @@ end
 redis.call('incrby', stockKey, -1)
 -- 3.5 保存用户 sadd orderKey, userId
 redis.call('sadd', orderKey, userId)
--- 3.6 发送消息到redis消息队列 XADD stream.orders * k1 v1 k2 v2
-redis.call('xadd', 'stream.orders', '*', 'id', orderId, 'userId', userId, 'voucherId', voucherId)
+-- 3.6 记录订单状态为处理中
+if (statusKey ~= nil) then
+    redis.call('hset', statusKey, statusField, 'P')
+    redis.call('expire', statusKey, statusTtl)
+end
+-- 3.7 记录用户的订单id，对账时据此查询订单状态
+redis.call('hset', 'seckill:order:id:' .. voucherId, userId, orderId)
+-- 3.8 发送消息到redis消息队列 XADD stream.orders * k1 v1 k2 v2
+redis.call('xadd', streamKey, '*', 'id', orderId, 'userId', userId, 'voucherId', voucherId)
 return 0
\ No newline at end of file
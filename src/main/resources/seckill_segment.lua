@@ -0,0 +1,16 @@
+-- 分段库存模式下在用户所属的分段扣减库存，库存key与订单key使用相同的hash tag
+-- KEYS[1] 分段库存key，KEYS[2] 分段订单key，ARGV[1] 用户id
+
+-- 1. 判断用户是否下过单
+if (redis.call('sismember', KEYS[2], ARGV[1]) == 1) then
+    return 2
+end
+-- 2. 判断分段库存是否充足
+local stock = tonumber(redis.call('get', KEYS[1]))
+if (stock == nil or stock <= 0) then
+    return 1
+end
+-- 3. 扣减库存，保存用户
+redis.call('incrby', KEYS[1], -1)
+redis.call('sadd', KEYS[2], ARGV[1])
+return 0
@@ -0,0 +1,8 @@
+-- 从其他分段借一个库存，库存不足返回0
+-- KEYS[1] 分段库存key
+local stock = tonumber(redis.call('get', KEYS[1]))
+if (stock == nil or stock <= 0) then
+    return 0
+end
+redis.call('incrby', KEYS[1], -1)
+return 1
@@ -0,0 +1,14 @@
+-- 按数据库的 库存+订单数 修正redis库存，下单时库存减一、订单集合加一，两者之和不变，
+-- 所以在脚本中原子地读取和修正不会与下单冲突
+-- KEYS[1] 库存key，KEYS[2] 订单key，ARGV[1] 数据库的 库存+订单数
+local value = redis.call('get', KEYS[1])
+local stock = value and tonumber(value) or 0
+local total = stock + redis.call('scard', KEYS[2])
+local delta = tonumber(ARGV[1]) - total
+if (delta == 0) then
+    return 0
+end
+-- 订单集合已经多于总量时库存只能修正到0
+local target = math.max(stock + delta, 0)
+redis.call('set', KEYS[1], target)
+return target - stock
@@ -0,0 +1,14 @@
+-- 修正一个用户的下单记录，同时调整库存，保持 库存+订单数 不变
+-- KEYS[1] 库存key，KEYS[2] 订单key，ARGV[1] 用户id，ARGV[2] add：补上数据库中已有的订单；release：释放未落库的订单
+if (ARGV[2] == 'add') then
+    if (redis.call('sadd', KEYS[2], ARGV[1]) == 1) then
+        redis.call('incrby', KEYS[1], -1)
+        return 1
+    end
+    return 0
+end
+if (redis.call('srem', KEYS[2], ARGV[1]) == 1) then
+    redis.call('incrby', KEYS[1], 1)
+    return 1
+end
+return 0
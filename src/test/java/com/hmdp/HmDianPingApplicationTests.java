@@ -1,7 +1,12 @@
 package com.hmdp;
 
+import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.entity.Shop;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.service.impl.ShopServiceImpl;
+import com.hmdp.service.impl.VoucherOrderConsumer;
 import com.hmdp.utils.CacheClient;
 import com.hmdp.utils.RedisIdWorker;
 import org.junit.jupiter.api.Test;
@@ -11,6 +16,7 @@ import org.springframework.data.geo.Point;
 import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.data.redis.core.StringRedisTemplate;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -18,10 +24,12 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.CACHE_SHOP_KEY;
 import static com.hmdp.utils.RedisConstants.SHOP_GEO_KEY;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 /**
  * @author chake
@@ -38,6 +46,12 @@ public class HmDianPingApplicationTests {
     private RedisIdWorker redisIdWorker;
     @Autowired
     private StringRedisTemplate redisTemplate;
+    @Autowired
+    private VoucherOrderConsumer voucherOrderConsumer;
+    @Autowired
+    private ISeckillVoucherService seckillVoucherService;
+    @Autowired
+    private IVoucherOrderService voucherOrderService;
 
     private ExecutorService es = Executors.newFixedThreadPool(500);
 
@@ -82,4 +96,51 @@ public class HmDianPingApplicationTests {
             redisTemplate.opsForGeo().add(key,locations);
         }
     }
+
+    /**
+     * 对比加锁写入与幂等写入订单的吞吐量，每种方式使用一张临时秒杀券，结束后删除。
+     * 每个用户只下一单、库存刚好够，两种方式都应全部写入且库存扣减为0
+     */
+    @Test
+    public void testVoucherOrderPersistThroughput() throws InterruptedException {
+        int orders = 5000;
+        for (String persist : List.of("lock", "idempotent")) {
+            long voucherId = redisIdWorker.nextId("test:voucher");
+            seckillVoucherService.save(new SeckillVoucher()
+                    .setVoucherId(voucherId)
+                    .setStock(orders)
+                    .setBeginTime(LocalDateTime.now())
+                    .setEndTime(LocalDateTime.now().plusHours(1)));
+            CountDownLatch latch = new CountDownLatch(orders);
+            AtomicInteger created = new AtomicInteger();
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < orders; i++) {
+                VoucherOrder order = new VoucherOrder()
+                        .setId(redisIdWorker.nextId("order"))
+                        .setUserId((long) i)
+                        .setVoucherId(voucherId);
+                es.submit(() -> {
+                    try {
+                        if (voucherOrderConsumer.persist(order, persist)) {
+                            created.incrementAndGet();
+                        }
+                    } finally {
+                        latch.countDown();
+                    }
+                });
+            }
+            latch.await();
+            long cost = Math.max(1, System.currentTimeMillis() - start);
+            System.out.printf("persist=%s 订单 %d 条，成功 %d 条，耗时 %d ms，%d 条/秒%n",
+                    persist, orders, created.get(), cost, orders * 1000L / cost);
+            try {
+                assertEquals(orders, created.get(), "persist=" + persist + " 写入的订单数不等于下单数");
+                assertEquals(0, seckillVoucherService.getById(voucherId).getStock(),
+                        "persist=" + persist + " 数据库库存未扣减为0");
+            } finally {
+                voucherOrderService.lambdaUpdate().eq(VoucherOrder::getVoucherId, voucherId).remove();
+                seckillVoucherService.removeById(voucherId);
+            }
+        }
+    }
 }
@@ -0,0 +1,123 @@
+package com.hmdp.benchmark;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.config.CacheProperties;
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheEntry;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.RedisData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比逻辑过期缓存的JSON与二进制序列化性能
+ * <p>
+ * 运行：mvn test-compile 后执行本类的 main 方法
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CacheCodecBenchmark {
+
+    /**
+     * 图片地址的数量，模拟 images 字段很长的商铺
+     */
+    @Param({"3", "30"})
+    public int imageCount;
+
+    private Shop shop;
+    private long expireAt;
+    private String legacyJson;
+    private JsonCacheCodec jsonCodec;
+    private BinaryCacheCodec binaryCodec;
+    private byte[] jsonBytes;
+    private byte[] binaryBytes;
+
+    @Setup
+    public void setup() {
+        StringBuilder images = new StringBuilder();
+        for (int i = 0; i < imageCount; i++) {
+            if (i > 0) {
+                images.append(',');
+            }
+            images.append("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vmIU_8ZGOT1OjpJmLxG6urQ_")
+                    .append(i).append(".jpg");
+        }
+        shop = new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages(images.toString())
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.now())
+                .setUpdateTime(LocalDateTime.now());
+        expireAt = System.currentTimeMillis() + 30_000;
+
+        jsonCodec = new JsonCacheCodec();
+        binaryCodec = new BinaryCacheCodec(jsonCodec, new CacheProperties());
+
+        RedisData redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(LocalDateTime.now().plusSeconds(30));
+        legacyJson = JSONUtil.toJsonStr(redisData);
+        jsonBytes = jsonCodec.encodeWithExpire(shop, expireAt);
+        binaryBytes = binaryCodec.encodeWithExpire(shop, expireAt);
+        System.out.printf("%n序列化后大小 json=%d bytes, binary=%d bytes%n", jsonBytes.length, binaryBytes.length);
+    }
+
+    /**
+     * 原先 queryWithLogicExpire 的解析方式：字符串 -> RedisData -> JSONObject -> Shop
+     */
+    @Benchmark
+    public Shop legacyJsonDecode() {
+        RedisData redisData = JSONUtil.toBean(legacyJson, RedisData.class);
+        return JSONUtil.toBean((JSONObject) redisData.getData(), Shop.class);
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() {
+        return jsonCodec.encodeWithExpire(shop, expireAt);
+    }
+
+    @Benchmark
+    public CacheEntry<Shop> jsonDecode() {
+        return jsonCodec.decodeWithExpire(jsonBytes, Shop.class);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return binaryCodec.encodeWithExpire(shop, expireAt);
+    }
+
+    @Benchmark
+    public CacheEntry<Shop> binaryDecode() {
+        return binaryCodec.decodeWithExpire(binaryBytes, Shop.class);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(CacheCodecBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,77 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.config.IdProperties;
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SnowflakeIdGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比 RedisIdWorker 三种模式生成id的吞吐量：incr 每个id一次网络往返，segment 批量租用号段，snowflake 不访问redis。
+ * <p>
+ * 运行：mvn test-compile 后执行本类的 main 方法，依次用 1、4、16、64 个线程测试，
+ * 通过 -Dredis.host、-Dredis.port 指定redis，-Dthreads=1,8 指定线程数
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class IdWorkerBenchmark {
+
+    private static final String PREFIX = "benchmark";
+
+    @Param({"incr", "segment", "snowflake"})
+    public String mode;
+
+    private LettuceConnectionFactory connectionFactory;
+    private SnowflakeIdGenerator snowflakeIdGenerator;
+    private RedisIdWorker redisIdWorker;
+
+    @Setup
+    public void setup() {
+        connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                System.getProperty("redis.host", "127.0.0.1"),
+                Integer.getInteger("redis.port", 6379)));
+        connectionFactory.afterPropertiesSet();
+        StringRedisTemplate redisTemplate = new StringRedisTemplate(connectionFactory);
+
+        IdProperties idProperties = new IdProperties();
+        idProperties.setMode(mode);
+        snowflakeIdGenerator = new SnowflakeIdGenerator(redisTemplate, idProperties);
+        snowflakeIdGenerator.init();
+        redisIdWorker = new RedisIdWorker(redisTemplate, idProperties, snowflakeIdGenerator);
+    }
+
+    @TearDown
+    public void tearDown() {
+        redisIdWorker.destroy();
+        snowflakeIdGenerator.destroy();
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public long nextId() {
+        return redisIdWorker.nextId(PREFIX);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (String threads : System.getProperty("threads", "1,4,16,64").split(",")) {
+            new Runner(new OptionsBuilder()
+                    .include(IdWorkerBenchmark.class.getSimpleName())
+                    .threads(Integer.parseInt(threads.trim()))
+                    .build()).run();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.config.OrderProperties;
+import com.hmdp.utils.OrderStatusStore;
+import com.hmdp.utils.SegmentedStock;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.RedisClusterConfiguration;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.ORDER_STREAM_KEY;
+
+/**
+ * 对比单key库存与分段库存的秒杀吞吐量。segments=1 时所有请求落在同一个库存key上，与原来的 seckill.lua 相同；
+ * seckill.lua 在同一脚本中写stream，集群下会跨slot，所以两种情况都使用 SegmentedStock 的脚本。
+ * 单机redis只有一个线程，分段没有收益，需要连接集群才能看出差别：
+ * <p>
+ * 运行：mvn test-compile 后执行本类的 main 方法，
+ * 通过 -Dredis.cluster=host1:port1,host2:port2 指定集群，或 -Dredis.host、-Dredis.port 指定单机
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(64)
+@Fork(1)
+public class SeckillStockBenchmark {
+
+    private static final long VOUCHER_ID = 900_000_001L;
+
+    /**
+     * 足够大的库存，压测过程中不会卖完
+     */
+    private static final long STOCK = 1_000_000_000L;
+
+    @Param({"1", "8", "16"})
+    public int segments;
+
+    private LettuceConnectionFactory connectionFactory;
+    private StringRedisTemplate redisTemplate;
+    private SegmentedStock segmentedStock;
+    private final AtomicLong userId = new AtomicLong();
+    private final AtomicLong orderId = new AtomicLong();
+
+    @Setup
+    public void setup() {
+        String cluster = System.getProperty("redis.cluster");
+        if (cluster != null) {
+            connectionFactory = new LettuceConnectionFactory(
+                    new RedisClusterConfiguration(Arrays.asList(cluster.split(","))));
+        } else {
+            connectionFactory = new LettuceConnectionFactory(new RedisStandaloneConfiguration(
+                    System.getProperty("redis.host", "127.0.0.1"),
+                    Integer.getInteger("redis.port", 6379)));
+        }
+        connectionFactory.afterPropertiesSet();
+        redisTemplate = new StringRedisTemplate(connectionFactory);
+
+        OrderProperties orderProperties = new OrderProperties();
+        orderProperties.getStock().setSegments(segments);
+        segmentedStock = new SegmentedStock(redisTemplate, orderProperties,
+                new OrderStatusStore(redisTemplate, null, orderProperties));
+
+        cleanUp();
+        segmentedStock.init(VOUCHER_ID, STOCK, true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        cleanUp();
+        connectionFactory.destroy();
+    }
+
+    /**
+     * 每次使用新的用户id，都能下单成功
+     */
+    @Benchmark
+    public int seckill() {
+        long user = userId.incrementAndGet();
+        return segmentedStock.seckill(VOUCHER_ID, user, orderId.incrementAndGet());
+    }
+
+    private void cleanUp() {
+        for (int i = 0; i < segments; i++) {
+            redisTemplate.delete(SegmentedStock.stockKey(VOUCHER_ID, i));
+            redisTemplate.delete(SegmentedStock.orderKey(VOUCHER_ID, i));
+        }
+        redisTemplate.delete(ORDER_STREAM_KEY);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SeckillStockBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -0,0 +1,338 @@
+package com.hmdp.perf;
+
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.config.OrderProperties;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.Voucher;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.SegmentedStock;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanFactoryPostProcessor;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.connection.stream.PendingMessagesSummary;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import redis.embedded.RedisServer;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.hmdp.utils.RedisConstants.LOGIN_USER_KEY;
+import static com.hmdp.utils.RedisConstants.SECKILL_STOCK_KEY;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 秒杀下单压测基线：启动完整应用，redis使用内嵌实例，数据库使用h2(MySQL兼容模式)，
+ * 用多个并发用户请求 POST /voucher-order/seckill/{id}，输出 p50/p99 延迟、成功下单的TPS、
+ * 消费者积压，并检查没有超卖、一人一单、redis与数据库库存一致。
+ * <p>
+ * 运行：mvn test -Pperf，参数通过系统属性调整：
+ * perf.users 用户数，perf.requests-per-user 每个用户的请求数(大于1时包含重复下单)，
+ * perf.concurrency 并发数，perf.stock 库存，perf.drain-timeout-millis 等待消费完成的时间，
+ * perf.max-p99-millis 大于0时p99超过该值则失败
+ *
+ * @author chake
+ * @since 2026/10/18
+ */
+@Slf4j
+@Tag("perf")
+@ActiveProfiles("perf")
+@DirtiesContext
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class SeckillPerfTest {
+
+    private static final int USERS = Integer.getInteger("perf.users", 5000);
+    private static final int REQUESTS_PER_USER = Integer.getInteger("perf.requests-per-user", 2);
+    private static final int CONCURRENCY = Integer.getInteger("perf.concurrency", 64);
+    private static final int STOCK = Integer.getInteger("perf.stock", 1000);
+    private static final long DRAIN_TIMEOUT_MILLIS = Long.getLong("perf.drain-timeout-millis", 60000L);
+    private static final long MAX_P99_MILLIS = Long.getLong("perf.max-p99-millis", 0L);
+
+    /**
+     * 压测用户的id从这里开始，避免与其他数据冲突
+     */
+    private static final long USER_ID_BASE = 1_000_000L;
+
+    private static final String TOKEN_PREFIX = "perf-";
+
+    private static final int REDIS_PORT = freePort();
+
+    @DynamicPropertySource
+    static void redisProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.redis.port", () -> REDIS_PORT);
+    }
+
+    /**
+     * 内嵌redis作为bean启动，redis连接依赖它，测试结束关闭应用时先关闭连接和消费线程再停止redis
+     */
+    @TestConfiguration
+    static class EmbeddedRedisConfig {
+
+        @Bean(destroyMethod = "stop")
+        public RedisServer embeddedRedis() throws IOException {
+            RedisServer server = RedisServer.newRedisServer()
+                    .port(REDIS_PORT)
+                    .setting("bind 127.0.0.1")
+                    .setting("save \"\"")
+                    .setting("appendonly no")
+                    .onShutdownForceStop(false)
+                    .build();
+            server.start();
+            return server;
+        }
+
+        @Bean
+        public static BeanFactoryPostProcessor embeddedRedisFirst() {
+            return beanFactory -> beanFactory.getBeanDefinition("redisConnectionFactory").setDependsOn("embeddedRedis");
+        }
+    }
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private IVoucherService voucherService;
+
+    @Autowired
+    private ISeckillVoucherService seckillVoucherService;
+
+    @Autowired
+    private IVoucherOrderService voucherOrderService;
+
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
+
+    @Autowired
+    private OrderProperties orderProperties;
+
+    @Test
+    void seckillBaseline() throws Exception {
+        // 1. 准备秒杀券和登录用户
+        Long voucherId = addVoucher();
+        login();
+
+        // 2. 并发请求，每个请求的延迟按序号记录
+        int total = USERS * REQUESTS_PER_USER;
+        long[] latencies = new long[total];
+        AtomicInteger cursor = new AtomicInteger();
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        URI uri = URI.create("http://127.0.0.1:" + port + "/voucher-order/seckill/" + voucherId);
+
+        // 2.1 采样消费者积压：已成功下单但还没写入数据库的订单数
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong maxBacklog = new AtomicLong();
+        Thread sampler = new Thread(() -> {
+            while (running.get()) {
+                long backlog = accepted.get() - countOrders(voucherId);
+                maxBacklog.accumulateAndGet(backlog, Math::max);
+                sleep(100);
+            }
+        }, "perf-lag-sampler");
+        sampler.start();
+
+        ExecutorService pool = Executors.newFixedThreadPool(CONCURRENCY);
+        long begin = System.nanoTime();
+        for (int t = 0; t < CONCURRENCY; t++) {
+            pool.submit(() -> {
+                int i;
+                while ((i = cursor.getAndIncrement()) < total) {
+                    // 同一用户的请求间隔USERS个序号，重复请求与其他用户的请求交错
+                    long userId = USER_ID_BASE + i % USERS;
+                    HttpRequest request = HttpRequest.newBuilder(uri)
+                            .header("authorization", TOKEN_PREFIX + userId)
+                            .POST(HttpRequest.BodyPublishers.noBody())
+                            .build();
+                    long start = System.nanoTime();
+                    try {
+                        HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                        latencies[i] = System.nanoTime() - start;
+                        if (response.statusCode() != 200) {
+                            errors.incrementAndGet();
+                            continue;
+                        }
+                        JSONObject body = JSONUtil.parseObj(response.body());
+                        if (Boolean.TRUE.equals(body.getBool("success"))) {
+                            accepted.incrementAndGet();
+                        } else {
+                            rejected.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        latencies[i] = System.nanoTime() - start;
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.MINUTES), "压测超时");
+        long elapsedNanos = System.nanoTime() - begin;
+
+        // 3. 等待消费者把订单写入数据库
+        long drainBegin = System.nanoTime();
+        long deadline = System.currentTimeMillis() + DRAIN_TIMEOUT_MILLIS;
+        while (countOrders(voucherId) < accepted.get() && System.currentTimeMillis() < deadline) {
+            sleep(50);
+        }
+        long drainMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - drainBegin);
+        running.set(false);
+        sampler.join();
+
+        // 4. 报告
+        Arrays.sort(latencies);
+        double seconds = elapsedNanos / 1e9;
+        long orders = countOrders(voucherId);
+        long pending = pendingMessages();
+        SeckillVoucher seckillVoucher = seckillVoucherService.getById(voucherId);
+        long redisStock = redisStock(voucherId);
+        log.info("\n===== 秒杀压测 =====\n" +
+                        "用户数：{}，每用户请求数：{}，并发数：{}，库存：{}，分段数：{}\n" +
+                        "请求数：{}，耗时：{} ms，总TPS：{}\n" +
+                        "成功：{}，成功TPS：{}，失败：{}，错误：{}\n" +
+                        "延迟 p50：{} ms，p99：{} ms，max：{} ms\n" +
+                        "消费者最大积压：{}，压测结束后消费完成耗时：{} ms，剩余pending：{}\n" +
+                        "数据库订单：{}，数据库库存：{}，redis库存：{}",
+                USERS, REQUESTS_PER_USER, CONCURRENCY, STOCK, orderProperties.getStock().getSegments(),
+                total, TimeUnit.NANOSECONDS.toMillis(elapsedNanos), String.format("%.1f", total / seconds),
+                accepted.get(), String.format("%.1f", accepted.get() / seconds), rejected.get(), errors.get(),
+                String.format("%.2f", millis(percentile(latencies, 0.50))),
+                String.format("%.2f", millis(percentile(latencies, 0.99))),
+                String.format("%.2f", millis(latencies[total - 1])),
+                maxBacklog.get(), drainMillis, pending,
+                orders, seckillVoucher.getStock(), redisStock);
+
+        // 5. 检查结果：不超卖、一人一单、消费完成、redis与数据库一致
+        assertEquals(0, errors.get(), "存在错误请求");
+        assertEquals(Math.min(USERS, STOCK), accepted.get(), "成功下单数应等于用户数与库存的较小值");
+        assertEquals(accepted.get(), orders, "消费者未在限定时间内写完订单");
+        assertEquals(orders, voucherOrderService.query()
+                .select("DISTINCT user_id")
+                .eq("voucher_id", voucherId)
+                .count(), "存在一人多单");
+        assertEquals(STOCK - orders, seckillVoucher.getStock().longValue(), "数据库库存与订单数不一致");
+        assertEquals(STOCK - orders, redisStock, "redis库存与订单数不一致");
+        assertEquals(0, pending, "存在未确认的订单消息");
+        if (MAX_P99_MILLIS > 0) {
+            assertTrue(millis(percentile(latencies, 0.99)) <= MAX_P99_MILLIS, "p99延迟超过 " + MAX_P99_MILLIS + " ms");
+        }
+    }
+
+    private Long addVoucher() {
+        Voucher voucher = new Voucher();
+        voucher.setShopId(1L);
+        voucher.setTitle("压测秒杀券");
+        voucher.setPayValue(100L);
+        voucher.setActualValue(1000L);
+        voucher.setType(1);
+        voucher.setStock(STOCK);
+        voucher.setBeginTime(LocalDateTime.now().minusMinutes(1));
+        voucher.setEndTime(LocalDateTime.now().plusHours(1));
+        voucherService.addSeckillVoucher(voucher);
+        return voucher.getId();
+    }
+
+    /**
+     * 直接写入登录token，与登录接口保存的用户信息相同
+     */
+    private void login() {
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (int i = 0; i < USERS; i++) {
+                long userId = USER_ID_BASE + i;
+                String key = LOGIN_USER_KEY + TOKEN_PREFIX + userId;
+                conn.hSet(key, "id", String.valueOf(userId));
+                conn.hSet(key, "nickName", "user_" + userId);
+                conn.expire(key, 3600);
+            }
+            return null;
+        });
+    }
+
+    private long countOrders(Long voucherId) {
+        return voucherOrderService.lambdaQuery().eq(VoucherOrder::getVoucherId, voucherId).count();
+    }
+
+    private long redisStock(Long voucherId) {
+        int segments = orderProperties.getStock().getSegments();
+        if (segments <= 1) {
+            return Long.parseLong(stringRedisTemplate.opsForValue().get(SECKILL_STOCK_KEY + voucherId));
+        }
+        long stock = 0;
+        for (int i = 0; i < segments; i++) {
+            stock += Long.parseLong(stringRedisTemplate.opsForValue().get(SegmentedStock.stockKey(voucherId, i)));
+        }
+        return stock;
+    }
+
+    /**
+     * 所有订单stream中已投递未确认的消息数
+     */
+    private long pendingMessages() {
+        long pending = 0;
+        for (String key : orderProperties.streamKeys()) {
+            PendingMessagesSummary summary = stringRedisTemplate.opsForStream()
+                    .pending(key, orderProperties.getStream().getGroup());
+            if (summary != null) {
+                pending += summary.getTotalPendingMessages();
+            }
+        }
+        return pending;
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(p * sorted.length) - 1)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}